@@ -0,0 +1,521 @@
+package com.govagency;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.govagency.model.Citizen;
+import com.govagency.model.Document;
+import com.govagency.model.ServiceRequest;
+import com.govagency.util.CitizenSearchIndex;
+import com.govagency.util.IdGenerator;
+import com.govagency.util.LruCache;
+import com.govagency.util.Page;
+import com.govagency.util.RequestSearchIndex;
+import com.govagency.util.SortKey;
+import com.govagency.util.StatusQueue;
+
+/**
+ * Process-wide in-memory view of the database, shared by every controller.
+ *
+ * <p>The domain objects held here belong to the UI thread. They may be the
+ * repository's own, so they are never changed: an accepted update puts a
+ * new object in the cache in place of the old one. Everything that
+ * touches the {@link Repository} runs on a dedicated database thread and
+ * returns a {@link CompletableFuture} that completes back on the UI thread,
+ * so the UI never waits on serialization or disk I/O.
+ *
+ * <p>Citizens are loaded at startup, on the database thread. Documents and service requests are loaded
+ * on demand, per citizen or per page, and only the most recently used ones are
+ * kept, so opening a session costs the same however large the database is.
+ *
+ * <p>Changes the database publishes are handed to the UI in batches, after
+ * the results of the work that made them, see {@link #addChangeListener}.
+ */
+public class DataStore {
+
+    // Set once by the database thread when the load starts
+    private Repository database;
+    private final ExecutorService dbExecutor;
+    private final Executor uiExecutor;
+
+    // Bounds the working set of documents and requests, each
+    private static final int CACHE_SIZE = Integer.getInteger("govagency.cacheSize", 2000);
+
+    private final Map<String, Citizen> citizens = new LinkedHashMap<>();
+    private final Map<String, Document> documents = new LruCache<>(CACHE_SIZE);
+    private final Map<String, ServiceRequest> requests = new LruCache<>(CACHE_SIZE);
+    private int nextCitizenId = 1;
+    private final IdGenerator ids = new IdGenerator();
+    // Belongs to the database thread, which keeps it in step with the database
+    private final CitizenSearchIndex citizenIndex = new CitizenSearchIndex();
+    private final RequestSearchIndex requestIndex = new RequestSearchIndex();
+
+    // Published by the database, not yet handed to the UI
+    private final List<RecordChange> pendingChanges = new ArrayList<>();
+    private final List<Consumer<List<RecordChange>>> changeListeners = new ArrayList<>();
+    private final CompletableFuture<Void> loaded;
+
+    /**
+     * Opens and loads the repository on the database thread, so the window can
+     * show meanwhile; see {@link #whenLoaded()}.
+     *
+     * @param opener opens the repository, e.g. {@code Repository::fromSystemProperties}
+     * @param uiExecutor where results are delivered, {@code Platform::runLater} in the app
+     */
+    public DataStore(Supplier<Repository> opener, Executor uiExecutor) {
+        this.uiExecutor = uiExecutor;
+        this.dbExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "govagency-db");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Replaying the records and scanning the citizens is the slow part of
+        // startup; every later task queues behind it
+        this.loaded = submit(() -> {
+            Repository repository = opener.get();
+            database = repository;
+            List<Citizen> loadedCitizens = new ArrayList<>();
+            repository.forEachCitizen(citizen -> {
+                loadedCitizens.add(citizen);
+                citizenIndex.put(citizen.getId(), citizen.getName(), citizen.getEmail(), citizen.getNumber());
+            });
+            repository.addChangeListener(this::queueChange);
+            return loadedCitizens;
+        }, loadedCitizens -> {
+            for (Citizen citizen : loadedCitizens) {
+                citizens.put(citizen.getId(), citizen);
+                reserveCitizenId(citizen.getId());
+            }
+            System.out.println("Total citizens loaded: " + citizens.size());
+            return null;
+        });
+
+        // Requests stay on disk; only their words are kept in memory. Built after
+        // the load, so searches queue behind it
+        dbExecutor.execute(() -> {
+            if (database == null) return;
+            database.forEachRequest(request ->
+                    requestIndex.add(request.getId(), request.getServiceType(), request.getDescription()));
+            System.out.println("Total requests indexed: " + requestIndex.size());
+        });
+    }
+
+    /**
+     * Completes on the UI thread once the citizens are loaded, or exceptionally
+     * if the repository could not be opened. Nothing else is usable before.
+     */
+    public CompletableFuture<Void> whenLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Swap freshly loaded objects for the cached instances of the same records,
+     * so the UI keeps working with one object per record while it is cached.
+     */
+    private static <T> List<T> intern(List<T> loaded, Map<String, T> cache, Function<T, String> idOf) {
+        List<T> result = new ArrayList<>(loaded.size());
+        for (T item : loaded) {
+            T cached = cache.get(idOf.apply(item));
+            if (cached == null) {
+                cache.put(idOf.apply(item), item);
+                cached = item;
+            }
+            result.add(cached);
+        }
+        return result;
+    }
+
+    /**
+     * Run {@code work} on the database thread, then {@code onUi} with its result on the UI thread.
+     * The returned future completes on the UI thread once {@code onUi} has run.
+     */
+    private <T, R> CompletableFuture<R> submit(Supplier<T> work, Function<T, R> onUi) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        dbExecutor.execute(() -> {
+            T value;
+            try {
+                value = work.get();
+            } catch (RuntimeException e) {
+                uiExecutor.execute(() -> result.completeExceptionally(e));
+                return;
+            }
+            uiExecutor.execute(() -> {
+                try {
+                    result.complete(onUi.apply(value));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Tell {@code listener}, on the UI thread, about records added, updated or
+     * removed. Each batch arrives after the futures of the calls that made its
+     * changes completed, so the cached objects already show them.
+     */
+    public void addChangeListener(Consumer<List<RecordChange>> listener) {
+        changeListeners.add(listener);
+    }
+
+    // Database thread. The hand-over is queued behind the running work, whose
+    // results go to the UI first; changes made meanwhile join the batch.
+    private void queueChange(RecordChange change) {
+        // Deleted requests leave the index at once, so they never take a search's places
+        if (change.getType() == RecordChange.Type.REMOVED && change.getRecordType() == ServiceRequest.class) {
+            requestIndex.remove(change.getId());
+        }
+        boolean first;
+        synchronized (pendingChanges) {
+            first = pendingChanges.isEmpty();
+            pendingChanges.add(change);
+        }
+        if (!first) return;
+
+        try {
+            dbExecutor.execute(this::handOverChanges);
+        } catch (RejectedExecutionException e) {
+            // Closing; nobody is left to show the change
+        }
+    }
+
+    private void handOverChanges() {
+        List<RecordChange> batch;
+        synchronized (pendingChanges) {
+            batch = Collections.unmodifiableList(new ArrayList<>(pendingChanges));
+            pendingChanges.clear();
+        }
+        uiExecutor.execute(() -> {
+            for (Consumer<List<RecordChange>> listener : changeListeners) {
+                listener.accept(batch);
+            }
+        });
+    }
+
+    // ------- CITIZENS -------
+    public Citizen getCitizen(String id) {
+        return citizens.get(id);
+    }
+
+    public boolean hasCitizen(String id) {
+        return citizens.containsKey(id);
+    }
+
+    /**
+     * Live read-only view of all citizens in insertion order.
+     */
+    public Collection<Citizen> getCitizens() {
+        return Collections.unmodifiableCollection(citizens.values());
+    }
+
+    /**
+     * Resolve a login email (case-insensitive); completes with null if no citizen uses it.
+     */
+    public CompletableFuture<Citizen> findCitizenByEmail(String email) {
+        return submit(() -> database.findCitizenIdByEmail(email), id -> id == null ? null : citizens.get(id));
+    }
+
+    /**
+     * Up to {@code limit} citizens whose name, email or phone number contains
+     * {@code query}, exact and prefix matches first.
+     */
+    public CompletableFuture<List<Citizen>> searchCitizens(String query, int limit) {
+        return submit(() -> citizenIndex.search(query, limit), found -> {
+            List<Citizen> result = new ArrayList<>(found.size());
+            for (String id : found) {
+                Citizen citizen = citizens.get(id);
+                if (citizen != null) result.add(citizen);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Hand out the next free numeric citizen id. Ids are reserved immediately so
+     * two registrations in flight never receive the same one.
+     */
+    public String allocateCitizenId() {
+        return String.valueOf(nextCitizenId++);
+    }
+
+    /**
+     * A new document id for this citizen; ids sort by creation time and never repeat.
+     */
+    public String allocateDocumentId(String citizenId) {
+        return "DOC-" + citizenId + "-" + ids.nextString();
+    }
+
+    /**
+     * A new service request id for this citizen; see {@link #allocateDocumentId}.
+     */
+    public String allocateRequestId(String citizenId) {
+        return "REQ-" + citizenId + "-" + ids.nextString();
+    }
+
+    private void reserveCitizenId(String id) {
+        try {
+            int numId = Integer.parseInt(id);
+            if (numId >= nextCitizenId) nextCitizenId = numId + 1;
+        } catch (NumberFormatException e) {
+            // Only numeric ids take part in auto-numbering
+        }
+    }
+
+    /**
+     * One page of all citizens in {@code sort} order, as the cached citizens.
+     */
+    public CompletableFuture<Page<Citizen>> getCitizenPage(int offset, int limit, SortKey sort, boolean descending) {
+        return submit(() -> new Page<>(database.getCitizenPage(offset, limit, sort, descending),
+                        offset, database.getCitizenCount()),
+                page -> {
+                    List<Citizen> items = new ArrayList<>(page.getItems().size());
+                    for (Citizen loaded : page.getItems()) {
+                        items.add(citizens.getOrDefault(loaded.getId(), loaded));
+                    }
+                    return new Page<>(items, offset, page.getTotal());
+                });
+    }
+
+    /**
+     * Fails with {@link IllegalArgumentException} if the email is already in use.
+     */
+    public CompletableFuture<Void> addCitizen(Citizen c) {
+        String name = c.getName();
+        String email = c.getEmail();
+        String number = c.getNumber();
+        return submit(() -> {
+            database.addCitizen(c);
+            citizenIndex.put(c.getId(), name, email, number);
+            return null;
+        }, ignored -> {
+            citizens.put(c.getId(), c);
+            reserveCitizenId(c.getId());
+            return null;
+        });
+    }
+
+    /**
+     * Store new name, email and number for an existing citizen. The cached citizen
+     * is only replaced once the database accepted the update; the future completes
+     * with the new one, or null if the citizen is gone.
+     * Fails with {@link IllegalArgumentException} if the email belongs to another citizen.
+     */
+    public CompletableFuture<Citizen> updateCitizen(String id, String name, String email, String number) {
+        Citizen changes = new Citizen(id, name, number, email);
+        return submit(() -> {
+            database.updateCitizen(id, changes);
+            citizenIndex.put(id, name, email, number);
+            return null;
+        }, ignored -> citizens.replace(id, changes) != null ? changes : null);
+    }
+
+    public CompletableFuture<Void> deleteCitizen(String id) {
+        return submit(() -> {
+            database.deleteCitizen(id);
+            citizenIndex.remove(id);
+            return null;
+        }, ignored -> {
+            citizens.remove(id);
+            return null;
+        });
+    }
+
+    // ------- DOCUMENTS -------
+
+    /**
+     * One page of all documents in {@code sort} order.
+     */
+    public CompletableFuture<Page<Document>> getDocumentPage(int offset, int limit, SortKey sort, boolean descending) {
+        return submit(() -> new Page<>(database.getDocumentPage(offset, limit, sort, descending),
+                        offset, database.getDocumentCount()),
+                page -> new Page<>(intern(page.getItems(), documents, Document::getId), offset, page.getTotal()));
+    }
+
+    /**
+     * A citizen's documents in upload order, resolved through the citizenId index.
+     */
+    public CompletableFuture<List<Document>> getDocumentsByCitizen(String citizenId) {
+        return submit(() -> database.getDocumentsByCitizen(citizenId),
+                loaded -> intern(loaded, documents, Document::getId));
+    }
+
+    /**
+     * Documents uploaded in [from, to) (epoch milliseconds), oldest first.
+     */
+    public CompletableFuture<List<Document>> getDocumentsUploadedBetween(long from, long to) {
+        return submit(() -> database.getDocumentsUploadedBetween(from, to),
+                loaded -> intern(loaded, documents, Document::getId));
+    }
+
+    /**
+     * The {@code limit} oldest documents with this status, and the count of each status.
+     * Documents whose status changed here but not yet in the database may still be listed.
+     */
+    public CompletableFuture<StatusQueue<Document, Document.Status>> getDocumentQueue(Document.Status status, int limit) {
+        return submit(() -> new StatusQueue<>(database.getDocumentsByStatus(status, limit), database.getDocumentCountsByStatus()),
+                queue -> new StatusQueue<>(intern(queue.getItems(), documents, Document::getId), queue.getCounts()));
+    }
+
+    /**
+     * Documents with this status uploaded before {@code before} (epoch milliseconds), oldest first.
+     */
+    public CompletableFuture<List<Document>> getDocumentsByStatusUploadedBefore(Document.Status status, long before) {
+        return submit(() -> database.getDocumentsByStatusUploadedBefore(status, before),
+                loaded -> intern(loaded, documents, Document::getId));
+    }
+
+    public CompletableFuture<Void> addDocument(Document d) {
+        return submit(() -> {
+            database.addDocument(d);
+            return null;
+        }, ignored -> {
+            documents.put(d.getId(), d);
+            return null;
+        });
+    }
+
+    /**
+     * Once the database accepted the new status, the cache holds a new document
+     * with it, which the future completes with; {@code d} is left as it was.
+     */
+    public CompletableFuture<Document> updateDocumentStatus(Document d, Document.Status status) {
+        Document changes = new Document(d.getId(), d.getCitizenId(), d.getUploadTimeMillis());
+        changes.setStatus(status);
+        return submit(() -> {
+            database.updateDocument(d.getId(), changes);
+            return null;
+        }, ignored -> {
+            documents.put(d.getId(), changes);
+            return changes;
+        });
+    }
+
+    /**
+     * The cached document with this id, or null if it is not cached.
+     */
+    public Document getCachedDocument(String id) {
+        return documents.get(id);
+    }
+
+    // ------- REQUESTS -------
+
+    /**
+     * One page of all service requests in {@code sort} order.
+     */
+    public CompletableFuture<Page<ServiceRequest>> getRequestPage(int offset, int limit, SortKey sort, boolean descending) {
+        return submit(() -> new Page<>(database.getRequestPage(offset, limit, sort, descending),
+                        offset, database.getRequestCount()),
+                page -> new Page<>(intern(page.getItems(), requests, ServiceRequest::getId), offset, page.getTotal()));
+    }
+
+    /**
+     * A citizen's service requests in submission order, resolved through the citizenId index.
+     */
+    public CompletableFuture<List<ServiceRequest>> getRequestsByCitizen(String citizenId) {
+        return submit(() -> database.getRequestsByCitizen(citizenId),
+                loaded -> intern(loaded, requests, ServiceRequest::getId));
+    }
+
+    /**
+     * Service requests submitted in [from, to) (epoch milliseconds), oldest first.
+     */
+    public CompletableFuture<List<ServiceRequest>> getRequestsSubmittedBetween(long from, long to) {
+        return submit(() -> database.getRequestsSubmittedBetween(from, to),
+                loaded -> intern(loaded, requests, ServiceRequest::getId));
+    }
+
+    /**
+     * The {@code limit} oldest service requests with this status, and the count of each status.
+     */
+    public CompletableFuture<StatusQueue<ServiceRequest, ServiceRequest.Status>> getRequestQueue(ServiceRequest.Status status, int limit) {
+        return submit(() -> new StatusQueue<>(database.getRequestsByStatus(status, limit), database.getRequestCountsByStatus()),
+                queue -> new StatusQueue<>(intern(queue.getItems(), requests, ServiceRequest::getId), queue.getCounts()));
+    }
+
+    /**
+     * Up to {@code limit} service requests whose service type and description
+     * contain every word and quoted phrase of {@code query}, best match first.
+     * A search made while the index is still being built at startup waits for it.
+     */
+    public CompletableFuture<List<ServiceRequest>> searchRequests(String query, int limit) {
+        return submit(() -> {
+            List<ServiceRequest> found = new ArrayList<>();
+            for (String id : requestIndex.search(query, limit)) {
+                ServiceRequest request = database.getRequest(id);
+                if (request != null) found.add(request);
+            }
+            return found;
+        }, loaded -> intern(loaded, requests, ServiceRequest::getId));
+    }
+
+    /**
+     * Fails with {@link IllegalArgumentException} if the citizen already has an
+     * open request for the same service type.
+     */
+    public CompletableFuture<Void> addRequest(ServiceRequest r) {
+        return submit(() -> {
+            database.addRequest(r);
+            requestIndex.add(r.getId(), r.getServiceType(), r.getDescription());
+            return null;
+        }, ignored -> {
+            requests.put(r.getId(), r);
+            return null;
+        });
+    }
+
+    /**
+     * Once the database accepted the new status, the cache holds a new request
+     * with it, which the future completes with; {@code r} is left as it was.
+     */
+    public CompletableFuture<ServiceRequest> updateRequestStatus(ServiceRequest r, ServiceRequest.Status status) {
+        ServiceRequest changes = new ServiceRequest(r.getId(), r.getCitizenId(), r.getServiceType(),
+                r.getDescription(), r.getDateMillis());
+        changes.setStatus(status);
+        return submit(() -> {
+            database.updateRequest(r.getId(), changes);
+            return null;
+        }, ignored -> {
+            requests.put(r.getId(), changes);
+            return changes;
+        });
+    }
+
+    /**
+     * The cached service request with this id, or null if it is not cached.
+     */
+    public ServiceRequest getCachedRequest(String id) {
+        return requests.get(id);
+    }
+
+    /**
+     * Finish queued database work, then flush and close the database.
+     */
+    public void close() {
+        dbExecutor.shutdown();
+        try {
+            if (!dbExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.err.println("Timed out waiting for database tasks to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (database != null) {
+            database.close();
+        }
+    }
+}
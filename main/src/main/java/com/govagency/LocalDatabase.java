@@ -1,311 +1,1342 @@
 package com.govagency;
 
-import java.io.FileWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.govagency.model.Citizen;
 import com.govagency.model.Document;
 import com.govagency.model.ServiceRequest;
+import com.govagency.storage.FsyncPolicy;
+import com.govagency.storage.MappedRecordStore;
+import com.govagency.storage.Persister;
+import com.govagency.storage.Segment;
+import com.govagency.storage.SnapshotCodec;
+import com.govagency.storage.StorageFormat;
+import com.govagency.storage.StorageOptions;
+import com.govagency.storage.StorageStats;
+import com.govagency.util.SortKey;
 
-public class LocalDatabase {
+/**
+ * {@link Repository} kept in memory and persisted to snapshot files, with an
+ * optional journal and memory-mapped record stores (see {@link StorageOptions}).
+ */
+public class LocalDatabase implements Repository {
 
-    private static final String DB_PATH = "database.json";
-    private final JSONObject root;
+    // File name prefix of the snapshot, journal and record store files
+    private static final String DB_NAME = "database";
+    private static final String[] TABLES = {"citizens", "documents", "requests"};
+
+    // Tables that can live in memory-mapped record stores, with the status values their status byte encodes
+    private static final Map<String, List<String>> MAPPED_TABLES = Map.of(
+            "documents", statusNames(Document.Status.values()),
+            "requests", statusNames(ServiceRequest.Status.values()));
+
+    private static final Map<String, Class<?>> RECORD_TYPES = Map.of(
+            "citizens", Citizen.class, "documents", Document.class, "requests", ServiceRequest.class);
+
+    // Timestamp field of each table, in epoch milliseconds
+    private static final Map<String, String> TIMESTAMP_FIELDS = Map.of("documents", "uploadTime", "requests", "date");
+
+    // Number of journal entries after which a segment's log is folded back into its snapshot
+    private static final int COMPACT_THRESHOLD = 500;
+
+    private final boolean journalMode;
+    private final StorageStats stats = new StorageStats();
+    private final Persister<Change> persister;
+    private boolean closed;
+
+    // Set while loading when a record had its timestamp filled in or converted
+    private boolean upgradedTimestamps;
+
+    // Segments in use, and those of the other layout whose tables move into them on load
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<Segment> retiredSegments = new ArrayList<>();
+    private final Map<String, Segment> segmentByTable = new HashMap<>();
+
+    // Record stores of the mapped tables when enabled, and stores of an earlier mapped run to remove
+    private final Map<String, MappedRecordStore> mappedStores = new HashMap<>();
+    private final List<Path> retiredStores = new ArrayList<>();
+
+    // Records are held as domain objects and only turned into JSON when written out
+    private final StatusIndex<Document, Document.Status> documentsByStatus =
+            new StatusIndex<>(Document.Status.class, Document::getStatus);
+    private final StatusIndex<ServiceRequest, ServiceRequest.Status> requestsByStatus =
+            new StatusIndex<>(ServiceRequest.Status.class, ServiceRequest::getStatus);
+
+    private final Table<Citizen> citizens = new Table<>(LocalDatabase::toCitizen, LocalDatabase::toJson,
+            Citizen::getId, null, null, null);
+    private final Table<Document> documents = new Table<>(LocalDatabase::toDocument, LocalDatabase::toJson,
+            Document::getId, Document::getCitizenId, Document::getUploadTimeMillis, documentsByStatus);
+    private final Table<ServiceRequest> requests = new Table<>(LocalDatabase::toRequest, LocalDatabase::toJson,
+            ServiceRequest::getId, ServiceRequest::getCitizenId, ServiceRequest::getDateMillis, requestsByStatus);
+    private final Map<String, Table<?>> tables = Map.of("citizens", citizens, "documents", documents, "requests", requests);
+
+    // Normalized email -> citizen id, keeps citizen emails unique
+    private final Map<String, String> citizenIdByEmail = new HashMap<>();
+
+    // (citizenId, normalized service type) -> ids of open requests, keeps one open request per service.
+    // Older files may hold duplicates, hence a set.
+    private final Map<String, Set<String>> openRequestIds = new HashMap<>();
+
+    private final List<Consumer<? super RecordChange>> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * One table: id -> record in insertion order, so the file layout stays stable,
+     * the ids in {@link SortKey#ID_ORDER}, and for documents and requests
+     * citizenId -> record ids, the records sorted by timestamp, for range scans,
+     * and the records of each status.
+     *
+     * <p>Stored objects are never modified; an update replaces the object, so
+     * instances handed out by the getters can be shared without copying.
+     */
+    private static final class Table<T> {
+        final Map<String, T> rows = new LinkedHashMap<>();
+        final NavigableSet<String> byId = new TreeSet<>(SortKey.ID_ORDER);
+        final NavigableMap<String, Set<String>> byOwner = new TreeMap<>(SortKey.ID_ORDER);
+        final NavigableSet<TimeKey> byTime = new TreeSet<>();
+        final Function<JSONObject, T> fromJson;
+        final Function<T, JSONObject> toJson;
+        final Function<T, String> idOf;
+        final Function<T, String> ownerOf;
+        final ToLongFunction<T> timeOf;
+        final StatusIndex<T, ?> byStatus;
+
+        Table(Function<JSONObject, T> fromJson, Function<T, JSONObject> toJson, Function<T, String> idOf,
+              Function<T, String> ownerOf, ToLongFunction<T> timeOf, StatusIndex<T, ?> byStatus) {
+            this.fromJson = fromJson;
+            this.toJson = toJson;
+            this.idOf = idOf;
+            this.ownerOf = ownerOf;
+            this.timeOf = timeOf;
+            this.byStatus = byStatus;
+        }
+
+        void clear() {
+            rows.clear();
+            byId.clear();
+            byOwner.clear();
+            byTime.clear();
+            if (byStatus != null) {
+                byStatus.clear();
+            }
+        }
+
+        JSONObject json(String id) {
+            return toJson.apply(rows.get(id));
+        }
+
+        /**
+         * The records as JSON, converted one at a time while the view is iterated.
+         */
+        Collection<JSONObject> json() {
+            return new AbstractCollection<>() {
+                @Override
+                public Iterator<JSONObject> iterator() {
+                    Iterator<T> it = rows.values().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public JSONObject next() {
+                            return toJson.apply(it.next());
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return rows.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Entry of a time index: ordered by timestamp, then id.
+     */
+    private static final class TimeKey implements Comparable<TimeKey> {
+        final long time;
+        final String id;
+
+        TimeKey(long time, String id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(TimeKey other) {
+            int order = Long.compare(time, other.time);
+            return order != 0 ? order : id.compareTo(other.id);
+        }
+    }
+
+    /**
+     * Records of each status, oldest first. A set's size is the status count.
+     */
+    private static final class StatusIndex<T, S extends Enum<S>> {
+        final Class<S> type;
+        final Map<S, NavigableSet<TimeKey>> buckets;
+        final Function<T, S> statusOf;
+
+        StatusIndex(Class<S> type, Function<T, S> statusOf) {
+            this.type = type;
+            this.buckets = new EnumMap<>(type);
+            this.statusOf = statusOf;
+            for (S status : type.getEnumConstants()) {
+                buckets.put(status, new TreeSet<>());
+            }
+        }
+
+        NavigableSet<TimeKey> bucket(T row) {
+            return buckets.get(statusOf.apply(row));
+        }
+
+        List<NavigableSet<TimeKey>> bucketsByName() {
+            List<S> statuses = new ArrayList<>(buckets.keySet());
+            statuses.sort(Comparator.comparing(Enum::name));
+            List<NavigableSet<TimeKey>> sorted = new ArrayList<>(statuses.size());
+            for (S status : statuses) {
+                sorted.add(buckets.get(status));
+            }
+            return sorted;
+        }
+
+        void clear() {
+            for (NavigableSet<TimeKey> bucket : buckets.values()) {
+                bucket.clear();
+            }
+        }
+
+        Map<S, Integer> counts() {
+            Map<S, Integer> counts = new EnumMap<>(type);
+            for (Map.Entry<S, NavigableSet<TimeKey>> bucket : buckets.entrySet()) {
+                counts.put(bucket.getKey(), bucket.getValue().size());
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * A change waiting for the persister: a journal line for a segment (null in
+     * snapshot-only mode), or a record store write that only needs a force.
+     */
+    private static final class Change {
+        final Segment segment;
+        final String line;
+
+        Change(Segment segment, String line) {
+            this.segment = segment;
+            this.line = line;
+        }
+    }
 
     public LocalDatabase() {
-        root = load();
+        this(StorageOptions.fromSystemProperties());
+    }
+
+    public LocalDatabase(StorageOptions options) {
+        this.journalMode = options.isJournal();
+
+        // Either one segment for all tables (database.json) or one per table (database-citizens.json, ...)
+        List<Segment> combined = List.of(new Segment(DB_NAME, Arrays.asList(TABLES), options, stats));
+        List<Segment> perTable = new ArrayList<>();
+        for (String table : TABLES) {
+            perTable.add(new Segment(DB_NAME + "-" + table, List.of(table), options, stats));
+        }
+        segments.addAll(options.isSegmented() ? perTable : combined);
+        retiredSegments.addAll(options.isSegmented() ? combined : perTable);
+        for (Segment segment : segments) {
+            for (String table : segment.getTables()) {
+                segmentByTable.put(table, segment);
+            }
+        }
+
+        if (options.isMappedRecords()) {
+            openRecordStores();
+        }
+        load();
+
+        // Under the timed policy, idle ticks sync what the last appends left behind
+        long tickMillis = journalMode && options.getFsyncPolicy() == FsyncPolicy.TIMED ? options.getFsyncIntervalMillis() : 0;
+        this.persister = new Persister<>(this::writeBatch, options.getFlushWindowMillis(), options.getQueueCapacity(),
+                tickMillis);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "govagency-shutdown"));
+    }
+
+    private void load() {
+        long start = System.nanoTime();
+        resetHeapPeak();
+        Set<Segment> stale = new HashSet<>();
+
+        // Files of the other layout predate the segments in use, so they are read first
+        int records = 0;
+        boolean migrating = false;
+        for (Segment segment : retiredSegments) {
+            if (!segment.exists()) continue;
+            System.out.println("Importing " + segment + " into the current storage layout");
+            records += loadSegment(segment, stale);
+            migrating = true;
+        }
+        for (Segment segment : segments) {
+            records += loadSegment(segment, stale);
+        }
+
+        int stored = Math.max(loadRecordStores(), 0);
+        boolean imported = importIntoRecordStores();
+
+        System.out.printf("Database loaded: %d records in %d ms (heap used %d MB, peak %d MB)%n",
+                records + stored, (System.nanoTime() - start) / 1_000_000,
+                heapUsedBytes() / (1024 * 1024), heapPeakBytes() / (1024 * 1024));
+
+        // Only rewrite snapshots that are stale or were restored from a backup or another format,
+        // unless tables moved between layouts or into or out of the record stores
+        boolean moved = migrating || imported || !retiredStores.isEmpty();
+        boolean saved = true;
+        for (Segment segment : segments) {
+            if (moved || stale.contains(segment)) {
+                saved &= tryCompact(segment);
+            }
+        }
+        if (saved) {
+            deleteRetiredSegments();
+            deleteRetiredStores();
+        }
+    }
+
+    /**
+     * Read a segment's snapshot, falling back to its newest readable backup and
+     * then to a file in another format, and replay its journal. Segments that
+     * need their snapshot rewritten are added to {@code stale}.
+     * @return number of snapshot records read
+     */
+    private int loadSegment(Segment segment, Set<Segment> stale) {
+        int records = -1;
+        upgradedTimestamps = false;
+        List<Path> candidates = segment.snapshotCandidates();
+        for (int i = 0; i < candidates.size() && records < 0; i++) {
+            Path candidate = candidates.get(i);
+            if (!Files.exists(candidate)) continue;
+
+            try {
+                records = readSnapshot(candidate);
+                if (segment.isBackup(i)) {
+                    System.err.println("Recovered " + segment + " from backup " + candidate.getFileName());
+                } else if (i > 0) {
+                    System.out.println("Importing " + candidate.getFileName() + " into "
+                            + segment.getSnapshotFile().getPath().getFileName());
+                }
+            } catch (IOException | org.json.JSONException e) {
+                System.err.println("Error loading " + candidate.getFileName() + ": " + e.getMessage());
+                clearTables(segment.getTables());
+            }
+            if (i > 0) {
+                stale.add(segment);
+            }
+        }
+        if (records < 0 || upgradedTimestamps) {
+            stale.add(segment);
+        }
+
+        List<JSONObject> entries = segment.getJournal().readEntries();
+        for (JSONObject entry : entries) {
+            try {
+                replay(entry);
+            } catch (org.json.JSONException e) {
+                System.err.println("Skipping invalid journal entry: " + e.getMessage());
+            }
+        }
+        if (!entries.isEmpty()) {
+            System.out.println("Replayed " + entries.size() + " journal entries of " + segment);
+            stale.add(segment);
+        }
+        return Math.max(records, 0);
+    }
+
+    private int readSnapshot(Path path) throws IOException {
+        // Records go straight into the tables; the file is never held as text or as a whole DOM
+        SnapshotCodec codec = StorageFormat.detect(path).getCodec();
+        try (InputStream in = Files.newInputStream(path)) {
+            return codec.read(in, (table, record) -> {
+                if (tables.containsKey(table)) {
+                    upgradedTimestamps |= isLegacy(table, record);
+                    applyPut(tables.get(table), record);
+                }
+            });
+        }
+    }
+
+    private void deleteRetiredSegments() {
+        for (Segment segment : retiredSegments) {
+            if (!segment.exists()) continue;
+            try {
+                segment.deleteFiles();
+            } catch (IOException e) {
+                System.err.println("Error removing " + segment + " files: " + e.getMessage());
+            }
+        }
+    }
+
+    // ------- RECORD STORES -------
+
+    private static Path storePath(String table) {
+        return Path.of(DB_NAME + "-" + table);
+    }
+
+    private static List<String> statusNames(Enum<?>[] values) {
+        List<String> names = new ArrayList<>();
+        for (Enum<?> value : values) {
+            names.add(value.name());
+        }
+        return names;
+    }
+
+    private void openRecordStores() {
+        for (Map.Entry<String, List<String>> table : MAPPED_TABLES.entrySet()) {
+            try {
+                mappedStores.put(table.getKey(), new MappedRecordStore(storePath(table.getKey()), table.getValue(), stats));
+            } catch (IOException e) {
+                System.err.println("Error opening " + table.getKey() + " record store, keeping it in the snapshot: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Load the records of existing stores: the open ones in mapped mode, and any
+     * left by an earlier mapped run otherwise, whose records move back into the snapshot.
+     * @return number of records loaded, or -1 if there were no stores to load
+     */
+    private int loadRecordStores() {
+        int loaded = -1;
+        for (String table : MAPPED_TABLES.keySet()) {
+            MappedRecordStore store = mappedStores.get(table);
+            try {
+                if (store != null) {
+                    if (store.isCreated()) continue;
+                    List<String> legacy = new ArrayList<>();
+                    loaded = Math.max(loaded, 0) + store.load(record -> {
+                        if (isLegacy(table, record)) {
+                            legacy.add(record.getString("id"));
+                        }
+                        applyPut(tables.get(table), record);
+                    });
+                    // Rewrite records whose timestamp was filled in, so it stays the same next time
+                    for (String id : legacy) {
+                        store.put(tables.get(table).json(id));
+                    }
+                    store.force();
+                } else if (MappedRecordStore.exists(storePath(table))) {
+                    try (MappedRecordStore retired = new MappedRecordStore(storePath(table), MAPPED_TABLES.get(table), stats)) {
+                        loaded = Math.max(loaded, 0) + retired.load(record -> applyPut(tables.get(table), record));
+                    }
+                    retiredStores.add(storePath(table));
+                }
+            } catch (IOException | org.json.JSONException e) {
+                System.err.println("Error loading " + table + " record store: " + e.getMessage());
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Move the records of tables that just got a new store out of the snapshot.
+     * A store that cannot be filled is dropped and its table stays in the snapshot.
+     * @return true if records were moved
+     */
+    private boolean importIntoRecordStores() {
+        boolean imported = false;
+        for (String table : MAPPED_TABLES.keySet()) {
+            MappedRecordStore store = mappedStores.get(table);
+            if (store == null || !store.isCreated() || tables.get(table).rows.isEmpty()) continue;
+
+            try {
+                for (JSONObject record : tables.get(table).json()) {
+                    store.put(record);
+                }
+                store.force();
+                imported = true;
+            } catch (IOException | org.json.JSONException e) {
+                System.err.println("Error moving " + table + " into its record store, keeping it in the snapshot: " + e.getMessage());
+                mappedStores.remove(table);
+                try {
+                    store.close();
+                    MappedRecordStore.delete(storePath(table));
+                } catch (IOException closeError) {
+                    System.err.println("Error removing " + table + " record store: " + closeError.getMessage());
+                }
+            }
+        }
+        return imported;
+    }
+
+    private void deleteRetiredStores() {
+        for (Path store : retiredStores) {
+            try {
+                MappedRecordStore.delete(store);
+            } catch (IOException e) {
+                System.err.println("Error removing record store " + store + ": " + e.getMessage());
+            }
+        }
+        retiredStores.clear();
+    }
+
+    private void clearTables(Collection<String> names) {
+        for (String table : names) {
+            tables.get(table).clear();
+            if (table.equals("citizens")) {
+                citizenIdByEmail.clear();
+            }
+            if (table.equals("requests")) {
+                openRequestIds.clear();
+            }
+        }
+    }
+
+    private static void resetHeapPeak() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long heapPeakBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static long heapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private Map<String, Collection<JSONObject>> snapshot(Segment segment) {
+        Map<String, Collection<JSONObject>> snapshot = new LinkedHashMap<>();
+        for (String table : segment.getTables()) {
+            if (!mappedStores.containsKey(table)) {
+                snapshot.put(table, tables.get(table).json());
+            }
+        }
+        return snapshot;
     }
 
-    private JSONObject load() {
+    private void save(Segment segment) throws IOException {
+        // Serialize under the lock, write outside it so mutations are not held up by disk I/O
+        byte[] data;
+        synchronized (this) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            segment.getFormat().getCodec().write(snapshot(segment), buffer);
+            data = buffer.toByteArray();
+        }
+        segment.getSnapshotFile().write(out -> out.write(data));
+    }
+
+    /**
+     * Block until every mutation made so far has been written by the persister.
+     */
+    @Override
+    public void flush() {
         try {
-            if (!Files.exists(Path.of(DB_PATH))) {
-                return initializeDatabase();
-            }
-            
-            String text = Files.readString(Path.of(DB_PATH));
-            JSONObject obj = new JSONObject(text);
-            
-            // Ensure all required keys exist
-            if (!obj.has("citizens")) {
-                obj.put("citizens", new JSONArray());
-            }
-            if (!obj.has("documents")) {
-                obj.put("documents", new JSONArray());
-            }
-            if (!obj.has("requests")) {
-                obj.put("requests", new JSONArray());
-            }
-            
-            save(obj);
-            return obj;
-        } catch (IOException | org.json.JSONException e) {
-            System.err.println("Error loading database: " + e.getMessage());
-            return initializeDatabase();
+            persister.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Flush pending writes and close the journal. Safe to call more than once;
+     * also runs from a shutdown hook.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+
+        persister.close();
+        for (Segment segment : segments) {
+            try {
+                segment.getJournal().close();
+            } catch (IOException e) {
+                System.err.println("Error closing journal of " + segment + ": " + e.getMessage());
+            }
+        }
+        for (Map.Entry<String, MappedRecordStore> store : mappedStores.entrySet()) {
+            try {
+                store.getValue().close();
+            } catch (IOException e) {
+                System.err.println("Error closing " + store.getKey() + " record store: " + e.getMessage());
+            }
         }
+        System.out.println("Storage stats: " + stats);
     }
 
-    private JSONObject initializeDatabase() {
-        JSONObject obj = new JSONObject();
-        obj.put("citizens", new JSONArray());
-        obj.put("documents", new JSONArray());
-        obj.put("requests", new JSONArray());
-        save(obj);
-        return obj;
+    public StorageStats getStats() {
+        return stats;
     }
 
-    private void save(JSONObject data) {
-        try (FileWriter fw = new FileWriter(DB_PATH)) {
-            fw.write(data.toString(4));
-        } catch (Exception e) {
-            System.err.println("Error saving database: " + e.getMessage());
+    // ------- JOURNAL -------
+
+    /**
+     * Queue a mutation that has already been applied in memory. The persister
+     * writes it with whatever else arrives in the same flush window.
+     * Changes to record stores are already written and only queue a force.
+     */
+    private void commit(String table, JSONObject entry) {
+        if (mappedStores.containsKey(table)) {
+            persister.submit(new Change(null, null));
+            return;
         }
+        persister.submit(new Change(segmentByTable.get(table), journalMode ? entry.toString() : null));
     }
 
-    // ------- CITIZENS -------
-    public void addCitizen(Citizen c) {
+    /**
+     * Persister callback: force the record stores if they changed, then append
+     * each changed segment's entries to its own journal (one fsync per journal
+     * under the batch policy), or in snapshot-only mode write a single snapshot
+     * of each changed segment. Segments without changes are not touched.
+     * An empty batch is an idle tick: journals whose fsync is due are forced.
+     */
+    private void writeBatch(List<Change> batch) throws IOException {
+        if (batch.isEmpty()) {
+            for (Segment segment : new LinkedHashSet<>(segmentByTable.values())) {
+                segment.getJournal().syncIfDue();
+            }
+            return;
+        }
+
+        Map<Segment, List<String>> linesBySegment = new LinkedHashMap<>();
+        boolean storesChanged = false;
+        for (Change change : batch) {
+            if (change.segment == null) {
+                storesChanged = true;
+                continue;
+            }
+            List<String> lines = linesBySegment.computeIfAbsent(change.segment, k -> new ArrayList<>());
+            if (change.line != null) {
+                lines.add(change.line);
+            }
+        }
+
+        if (storesChanged) {
+            for (MappedRecordStore store : mappedStores.values()) {
+                store.force();
+                store.compactIfNeeded();
+            }
+        }
+
+        for (Map.Entry<Segment, List<String>> changed : linesBySegment.entrySet()) {
+            Segment segment = changed.getKey();
+            if (journalMode) {
+                segment.getJournal().appendAll(changed.getValue());
+                if (segment.getJournal().size() < COMPACT_THRESHOLD) continue;
+            }
+            compact(segment);
+        }
+    }
+
+    /**
+     * Write a full snapshot of one segment and drop the journal entries it now contains.
+     * Entries still queued may be appended again afterwards; replay is idempotent.
+     */
+    private void compact(Segment segment) throws IOException {
+        save(segment);
+        segment.getJournal().reset();
+    }
+
+    private boolean tryCompact(Segment segment) {
         try {
-            JSONArray arr = root.optJSONArray("citizens");
-            if (arr == null) {
-                arr = new JSONArray();
-                root.put("citizens", arr);
+            compact(segment);
+            return true;
+        } catch (IOException | org.json.JSONException e) {
+            System.err.println("Error saving " + segment + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Replay is idempotent so a crash between snapshot and journal reset is harmless
+    private void replay(JSONObject entry) {
+        Table<?> table = tables.get(entry.getString("table"));
+        if (table == null) {
+            System.err.println("Unknown journal table: " + entry.getString("table"));
+            return;
+        }
+        switch (entry.getString("op")) {
+            case "put":
+                applyPut(table, entry.getJSONObject("record"));
+                break;
+            case "update":
+                applyUpdate(table, entry.getString("id"), entry.getJSONObject("fields"));
+                break;
+            case "delete":
+                applyDelete(table, entry.getString("id"));
+                break;
+            default:
+                System.err.println("Unknown journal operation: " + entry.getString("op"));
+        }
+    }
+
+    // Written before timestamps were stored as epoch milliseconds
+    private static boolean isLegacy(String table, JSONObject record) {
+        String field = TIMESTAMP_FIELDS.get(table);
+        return field != null && !(record.opt(field) instanceof Number);
+    }
+
+    private static JSONObject putEntry(String table, JSONObject record) {
+        return new JSONObject().put("op", "put").put("table", table).put("record", record);
+    }
+
+    private static JSONObject updateEntry(String table, String id, JSONObject fields) {
+        return new JSONObject().put("op", "update").put("table", table).put("id", id).put("fields", fields);
+    }
+
+    private static JSONObject deleteEntry(String table, String id) {
+        return new JSONObject().put("op", "delete").put("table", table).put("id", id);
+    }
+
+    private void put(String table, JSONObject record) {
+        persister.awaitCapacity();
+        synchronized (this) {
+            checkEmailAvailable(table, record.getString("id"), record, "Email already in use.");
+            if (table.equals("requests")) {
+                checkNoOpenDuplicate(toRequest(record), "You already have a pending request for: " + record.getString("type")
+                        + "\n\nPlease wait for it to be processed or contact an administrator.");
             }
+            storePut(table, record);
+            applyPut(tables.get(table), record);
+            commit(table, putEntry(table, record));
+        }
+        publish(RecordChange.Type.ADDED, table, record.getString("id"));
+    }
 
-            JSONObject obj = new JSONObject();
-            obj.put("id", c.getId());
-            obj.put("name", c.getName());
-            obj.put("email", c.getEmail());
-            obj.put("number", c.getNumber());
+    private void update(String table, String id, JSONObject fields) {
+        persister.awaitCapacity();
+        synchronized (this) {
+            checkEmailAvailable(table, id, fields, "Email already in use by another citizen.");
+            if (!tables.get(table).rows.containsKey(id)) return;
 
-            arr.put(obj);
-            save(root);
-        } catch (org.json.JSONException e) {
-            System.err.println("Error adding citizen: " + e.getMessage());
+            // Only reopening a request can create a duplicate
+            if (table.equals("requests") && fields.has("status") && !requests.rows.get(id).getStatus().isOpen()) {
+                checkNoOpenDuplicate(toRequest(merged(requests, id, fields)),
+                        "Another pending request for this service already exists.");
+            }
+
+            storeUpdate(table, id, fields);
+            applyUpdate(tables.get(table), id, fields);
+            commit(table, updateEntry(table, id, fields));
         }
+        publish(RecordChange.Type.UPDATED, table, id);
     }
 
-    public void deleteCitizen(String citizenId) {
+    private void delete(String table, String id) {
+        persister.awaitCapacity();
+        boolean deleted;
+        synchronized (this) {
+            MappedRecordStore store = mappedStores.get(table);
+            if (store != null) {
+                store.delete(id);
+            }
+            deleted = applyDelete(tables.get(table), id);
+            if (deleted) {
+                commit(table, deleteEntry(table, id));
+            }
+        }
+        if (deleted) {
+            publish(RecordChange.Type.REMOVED, table, id);
+        }
+    }
+
+    // Outside the lock, so listeners never hold up other threads' reads
+    private void publish(RecordChange.Type type, String table, String id) {
+        RecordChange change = new RecordChange(type, RECORD_TYPES.get(table), id);
+        for (Consumer<? super RecordChange> listener : changeListeners) {
+            listener.accept(change);
+        }
+    }
+
+    // Record stores are written before memory, so a failed write leaves both unchanged
+    private void storePut(String table, JSONObject record) {
+        MappedRecordStore store = mappedStores.get(table);
+        if (store == null) return;
+
         try {
-            JSONArray arr = root.optJSONArray("citizens");
-            if (arr == null) return;
-            
-            JSONArray newArr = new JSONArray();
-
-            for (int i = 0; i < arr.length(); i++) {
-                JSONObject obj = arr.getJSONObject(i);
-                if (!obj.getString("id").equals(citizenId)) {
-                    newArr.put(obj);
+            store.put(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void storeUpdate(String table, String id, JSONObject fields) {
+        MappedRecordStore store = mappedStores.get(table);
+        if (store == null) return;
+
+        // Status transitions, the common case, are a single byte written in place
+        if (fields.length() == 1 && fields.opt("status") instanceof String
+                && store.updateStatus(id, fields.getString("status"))) {
+            return;
+        }
+        storePut(table, merged(tables.get(table), id, fields));
+    }
+
+    private void checkEmailAvailable(String table, String id, JSONObject fields, String message) {
+        if (table.equals("citizens") && fields.has("email") && isEmailTaken(fields.getString("email"), id)) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private void checkNoOpenDuplicate(ServiceRequest r, String message) {
+        if (!r.getStatus().isOpen()) return;
+
+        Set<String> ids = openRequestIds.get(openRequestKey(r));
+        if (ids != null && !(ids.size() == 1 && ids.contains(r.getId()))) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private static String openRequestKey(ServiceRequest r) {
+        return r.getCitizenId() + '\u0000' + r.getServiceType().trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static <T> JSONObject merged(Table<T> table, String id, JSONObject fields) {
+        JSONObject record = table.json(id);
+        for (String key : fields.keySet()) {
+            record.put(key, fields.get(key));
+        }
+        return record;
+    }
+
+    private <T> void applyPut(Table<T> table, JSONObject record) {
+        T row = table.fromJson.apply(record);
+        T previous = table.rows.put(table.idOf.apply(row), row);
+        if (previous != null) {
+            unindex(table, previous, row);
+        }
+        index(table, row);
+    }
+
+    private <T> boolean applyUpdate(Table<T> table, String id, JSONObject fields) {
+        if (!table.rows.containsKey(id)) return false;
+
+        applyPut(table, merged(table, id, fields));
+        return true;
+    }
+
+    private <T> boolean applyDelete(Table<T> table, String id) {
+        T removed = table.rows.remove(id);
+        if (removed == null) return false;
+
+        unindex(table, removed, null);
+        return true;
+    }
+
+    private <T> void index(Table<T> table, T row) {
+        String id = table.idOf.apply(row);
+        table.byId.add(id);
+        if (row instanceof Citizen) {
+            citizenIdByEmail.put(normalizeEmail(((Citizen) row).getEmail()), id);
+            return;
+        }
+
+        if (row instanceof ServiceRequest && ((ServiceRequest) row).getStatus().isOpen()) {
+            openRequestIds.computeIfAbsent(openRequestKey((ServiceRequest) row), k -> new HashSet<>()).add(id);
+        }
+        if (table.ownerOf != null) {
+            table.byOwner.computeIfAbsent(table.ownerOf.apply(row), k -> new LinkedHashSet<>()).add(id);
+        }
+        if (table.timeOf != null) {
+            TimeKey key = new TimeKey(table.timeOf.applyAsLong(row), id);
+            table.byTime.add(key);
+            if (table.byStatus != null) {
+                table.byStatus.bucket(row).add(key);
+            }
+        }
+    }
+
+    /**
+     * Remove a row's index entries. Entries its {@code replacement} (null on
+     * delete) shares are kept, so a citizen's records keep their order across updates.
+     */
+    private <T> void unindex(Table<T> table, T row, T replacement) {
+        String id = table.idOf.apply(row);
+        if (replacement == null) {
+            table.byId.remove(id);
+        }
+        if (row instanceof Citizen) {
+            String email = normalizeEmail(((Citizen) row).getEmail());
+            if (replacement == null || !email.equals(normalizeEmail(((Citizen) replacement).getEmail()))) {
+                citizenIdByEmail.remove(email, id);
+            }
+            return;
+        }
+
+        if (row instanceof ServiceRequest && ((ServiceRequest) row).getStatus().isOpen()) {
+            String key = openRequestKey((ServiceRequest) row);
+            ServiceRequest next = (ServiceRequest) replacement;
+            if (next == null || !next.getStatus().isOpen() || !key.equals(openRequestKey(next))) {
+                Set<String> ids = openRequestIds.get(key);
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    openRequestIds.remove(key);
                 }
             }
+        }
+        if (table.ownerOf != null) {
+            String citizenId = table.ownerOf.apply(row);
+            Set<String> ids = table.byOwner.get(citizenId);
+            if (ids != null && (replacement == null || !citizenId.equals(table.ownerOf.apply(replacement)))) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    table.byOwner.remove(citizenId);
+                }
+            }
+        }
+        if (table.timeOf != null) {
+            long time = table.timeOf.applyAsLong(row);
+            boolean sameTime = replacement != null && time == table.timeOf.applyAsLong(replacement);
+            if (!sameTime) {
+                table.byTime.remove(new TimeKey(time, id));
+            }
+            // A status transition moves the record between buckets
+            if (table.byStatus != null && !(sameTime && table.byStatus.bucket(row) == table.byStatus.bucket(replacement))) {
+                table.byStatus.bucket(row).remove(new TimeKey(time, id));
+            }
+        }
+    }
+
+    private static String normalizeEmail(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // ------- CITIZENS -------
+    @Override
+    public void addCitizen(Citizen c) {
+        try {
+            put("citizens", toJson(c));
+        } catch (org.json.JSONException e) {
+            throw new IllegalStateException("Error adding citizen: " + e.getMessage(), e);
+        }
+    }
 
-            root.put("citizens", newArr);
-            save(root);
+    @Override
+    public void deleteCitizen(String citizenId) {
+        try {
+            delete("citizens", citizenId);
         } catch (org.json.JSONException e) {
-            System.err.println("Error deleting citizen: " + e.getMessage());
+            throw new IllegalStateException("Error deleting citizen: " + e.getMessage(), e);
         }
     }
 
+    @Override
     public void updateCitizen(String citizenId, Citizen c) {
         try {
-            JSONArray arr = root.optJSONArray("citizens");
-            if (arr == null) return;
-
-            for (int i = 0; i < arr.length(); i++) {
-                JSONObject obj = arr.getJSONObject(i);
-                if (obj.getString("id").equals(citizenId)) {
-                    obj.put("name", c.getName());
-                    obj.put("email", c.getEmail());
-                    obj.put("number", c.getNumber());
-                    break;
-                }
-            }
+            JSONObject fields = new JSONObject();
+            fields.put("name", c.getName());
+            fields.put("email", c.getEmail());
+            fields.put("number", c.getNumber());
 
-            save(root);
+            update("citizens", citizenId, fields);
         } catch (org.json.JSONException e) {
-            System.err.println("Error updating citizen: " + e.getMessage());
+            throw new IllegalStateException("Error updating citizen: " + e.getMessage(), e);
         }
     }
 
     // ------- DOCUMENTS -------
+    @Override
     public void addDocument(Document d) {
         try {
-            JSONArray arr = root.optJSONArray("documents");
-            if (arr == null) {
-                arr = new JSONArray();
-                root.put("documents", arr);
-            }
-
-            JSONObject obj = new JSONObject();
-            obj.put("id", d.getId());
-            obj.put("ownerId", d.getCitizenId());
-            obj.put("status", d.getStatus().name());
-
-            arr.put(obj);
-            save(root);
-        } catch (org.json.JSONException e) {
-            System.err.println("Error adding document: " + e.getMessage());
+            put("documents", toJson(d));
+        } catch (org.json.JSONException | UncheckedIOException e) {
+            throw new IllegalStateException("Error adding document: " + e.getMessage(), e);
         }
     }
 
+    @Override
     public void deleteDocument(String documentId) {
         try {
-            JSONArray arr = root.optJSONArray("documents");
-            if (arr == null) return;
-            
-            JSONArray newArr = new JSONArray();
-
-            for (int i = 0; i < arr.length(); i++) {
-                JSONObject obj = arr.getJSONObject(i);
-                if (!obj.getString("id").equals(documentId)) {
-                    newArr.put(obj);
-                }
-            }
-
-            root.put("documents", newArr);
-            save(root);
-        } catch (org.json.JSONException e) {
-            System.err.println("Error deleting document: " + e.getMessage());
+            delete("documents", documentId);
+        } catch (org.json.JSONException | UncheckedIOException e) {
+            throw new IllegalStateException("Error deleting document: " + e.getMessage(), e);
         }
     }
 
+    @Override
     public void updateDocument(String documentId, Document d) {
         try {
-            JSONArray arr = root.optJSONArray("documents");
-            if (arr == null) return;
-
-            for (int i = 0; i < arr.length(); i++) {
-                JSONObject obj = arr.getJSONObject(i);
-                if (obj.getString("id").equals(documentId)) {
-                    obj.put("status", d.getStatus().name());
-                    break;
-                }
-            }
+            JSONObject fields = new JSONObject();
+            fields.put("status", d.getStatus().name());
 
-            save(root);
-        } catch (org.json.JSONException e) {
-            System.err.println("Error updating document: " + e.getMessage());
+            update("documents", documentId, fields);
+        } catch (org.json.JSONException | UncheckedIOException e) {
+            throw new IllegalStateException("Error updating document: " + e.getMessage(), e);
         }
     }
 
     // ------- REQUESTS -------
+    @Override
     public void addRequest(ServiceRequest r) {
         try {
-            JSONArray arr = root.optJSONArray("requests");
-            if (arr == null) {
-                arr = new JSONArray();
-                root.put("requests", arr);
-            }
-
-            JSONObject obj = new JSONObject();
-            obj.put("id", r.getId());
-            obj.put("citizenId", r.getCitizenId());
-            obj.put("type", r.getServiceType());
-            obj.put("description", r.getDescription());
-            obj.put("status", r.getStatus().name());
-            obj.put("date", java.time.LocalDateTime.now().toString());
-
-            arr.put(obj);
-            save(root);
-        } catch (org.json.JSONException e) {
-            System.err.println("Error adding request: " + e.getMessage());
+            put("requests", toJson(r));
+        } catch (org.json.JSONException | UncheckedIOException e) {
+            throw new IllegalStateException("Error adding request: " + e.getMessage(), e);
         }
     }
 
+    @Override
     public void deleteRequest(String requestId) {
         try {
-            JSONArray arr = root.optJSONArray("requests");
-            if (arr == null) return;
-            
-            JSONArray newArr = new JSONArray();
-
-            for (int i = 0; i < arr.length(); i++) {
-                JSONObject obj = arr.getJSONObject(i);
-                if (!obj.getString("id").equals(requestId)) {
-                    newArr.put(obj);
-                }
-            }
-
-            root.put("requests", newArr);
-            save(root);
-        } catch (org.json.JSONException e) {
-            System.err.println("Error deleting request: " + e.getMessage());
+            delete("requests", requestId);
+        } catch (org.json.JSONException | UncheckedIOException e) {
+            throw new IllegalStateException("Error deleting request: " + e.getMessage(), e);
         }
     }
 
+    @Override
     public void updateRequest(String requestId, ServiceRequest r) {
         try {
-            JSONArray arr = root.optJSONArray("requests");
-            if (arr == null) return;
-
-            for (int i = 0; i < arr.length(); i++) {
-                JSONObject obj = arr.getJSONObject(i);
-                if (obj.getString("id").equals(requestId)) {
-                    obj.put("status", r.getStatus().name());
-                    break;
-                }
-            }
+            JSONObject fields = new JSONObject();
+            fields.put("status", r.getStatus().name());
 
-            save(root);
-        } catch (org.json.JSONException e) {
-            System.err.println("Error updating request: " + e.getMessage());
+            update("requests", requestId, fields);
+        } catch (org.json.JSONException | UncheckedIOException e) {
+            throw new IllegalStateException("Error updating request: " + e.getMessage(), e);
         }
     }
 
+    @Override
+    public void addChangeListener(Consumer<? super RecordChange> listener) {
+        changeListeners.add(listener);
+    }
+
     // -------- GETTERS --------
-    public List<JSONObject> getAllCitizens() {
-        JSONArray arr = root.optJSONArray("citizens");
-        List<JSONObject> list = new ArrayList<>();
-        
-        if (arr != null) {
-            for (int i = 0; i < arr.length(); i++) {
-                try {
-                    list.add(arr.getJSONObject(i));
-                } catch (org.json.JSONException e) {
-                    System.err.println("Error reading citizen: " + e.getMessage());
-                }
-            }
+    @Override
+    public synchronized void forEachCitizen(Consumer<? super Citizen> action) {
+        citizens.rows.values().forEach(action);
+    }
+
+    @Override
+    public synchronized void forEachDocument(Consumer<? super Document> action) {
+        documents.rows.values().forEach(action);
+    }
+
+    @Override
+    public synchronized void forEachRequest(Consumer<? super ServiceRequest> action) {
+        requests.rows.values().forEach(action);
+    }
+
+    @Override
+    public List<Document> getDocumentsByCitizen(String citizenId) {
+        return byCitizen(documents, citizenId);
+    }
+
+    @Override
+    public synchronized ServiceRequest getRequest(String requestId) {
+        return requests.rows.get(requestId);
+    }
+
+    @Override
+    public List<ServiceRequest> getRequestsByCitizen(String citizenId) {
+        return byCitizen(requests, citizenId);
+    }
+
+    // Resolved through the citizenId index
+    private synchronized <T> List<T> byCitizen(Table<T> table, String citizenId) {
+        Set<String> ids = table.byOwner.get(citizenId);
+        if (ids == null) return Collections.emptyList();
+
+        List<T> rows = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            rows.add(table.rows.get(id));
         }
-        
-        return list;
+        return Collections.unmodifiableList(rows);
     }
 
-    public List<JSONObject> getAllDocuments() {
-        JSONArray arr = root.optJSONArray("documents");
-        List<JSONObject> list = new ArrayList<>();
-        
-        if (arr != null) {
-            for (int i = 0; i < arr.length(); i++) {
-                try {
-                    list.add(arr.getJSONObject(i));
-                } catch (org.json.JSONException e) {
-                    System.err.println("Error reading document: " + e.getMessage());
+    @Override
+    public List<Citizen> getCitizenPage(int offset, int limit, SortKey sort, boolean descending) {
+        return page(citizens, offset, limit, sort, descending);
+    }
+
+    @Override
+    public List<Document> getDocumentPage(int offset, int limit, SortKey sort, boolean descending) {
+        return page(documents, offset, limit, sort, descending);
+    }
+
+    @Override
+    public List<ServiceRequest> getRequestPage(int offset, int limit, SortKey sort, boolean descending) {
+        return page(requests, offset, limit, sort, descending);
+    }
+
+    @Override
+    public List<Document> getDocumentsUploadedBetween(long from, long to) {
+        return between(documents, from, to);
+    }
+
+    @Override
+    public List<ServiceRequest> getRequestsSubmittedBetween(long from, long to) {
+        return between(requests, from, to);
+    }
+
+    @Override
+    public List<Document> getDocumentsByStatus(Document.Status status, int limit) {
+        return firstOf(documents, documentsByStatus.buckets.get(status), limit);
+    }
+
+    @Override
+    public List<Document> getDocumentsByStatusUploadedBefore(Document.Status status, long before) {
+        return firstOf(documents, documentsByStatus.buckets.get(status).headSet(new TimeKey(before, ""), false),
+                Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized Map<Document.Status, Integer> getDocumentCountsByStatus() {
+        return documentsByStatus.counts();
+    }
+
+    @Override
+    public List<ServiceRequest> getRequestsByStatus(ServiceRequest.Status status, int limit) {
+        return firstOf(requests, requestsByStatus.buckets.get(status), limit);
+    }
+
+    @Override
+    public synchronized Map<ServiceRequest.Status, Integer> getRequestCountsByStatus() {
+        return requestsByStatus.counts();
+    }
+
+    private synchronized <T> List<T> firstOf(Table<T> table, NavigableSet<TimeKey> keys, int limit) {
+        List<T> rows = new ArrayList<>(Math.max(0, Math.min(limit, keys.size())));
+        for (TimeKey key : keys) {
+            if (rows.size() >= limit) break;
+            rows.add(table.rows.get(key.id));
+        }
+        return Collections.unmodifiableList(rows);
+    }
+
+    // "" sorts before every id, so these bounds take in all records of [from, to)
+    private synchronized <T> List<T> between(Table<T> table, long from, long to) {
+        if (from >= to) return Collections.emptyList();
+
+        List<T> rows = new ArrayList<>();
+        for (TimeKey key : table.byTime.subSet(new TimeKey(from, ""), true, new TimeKey(to, ""), false)) {
+            rows.add(table.rows.get(key.id));
+        }
+        return Collections.unmodifiableList(rows);
+    }
+
+    @Override
+    public synchronized int getCitizenCount() {
+        return citizens.rows.size();
+    }
+
+    @Override
+    public synchronized int getDocumentCount() {
+        return documents.rows.size();
+    }
+
+    @Override
+    public synchronized int getRequestCount() {
+        return requests.rows.size();
+    }
+
+    // Walks the sorted index from the start, so a page costs its offset plus its length
+    private synchronized <T> List<T> page(Table<T> table, int offset, int limit, SortKey sort, boolean descending) {
+        Iterator<String> ids = sortedIds(table, sort, descending);
+        for (int skipped = 0; skipped < offset && ids.hasNext(); skipped++) {
+            ids.next();
+        }
+        List<T> rows = new ArrayList<>(Math.max(0, Math.min(limit, table.rows.size() - offset)));
+        while (rows.size() < limit && ids.hasNext()) {
+            rows.add(table.rows.get(ids.next()));
+        }
+        return Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * A table's ids in {@code sort} order, read lazily from its indexes.
+     */
+    private static <T> Iterator<String> sortedIds(Table<T> table, SortKey sort, boolean descending) {
+        if (sort != SortKey.ID && table.byStatus == null) {
+            throw new IllegalArgumentException("Cannot sort citizens by " + sort);
+        }
+        switch (sort) {
+            case ID:
+                return (descending ? table.byId.descendingSet() : table.byId).iterator();
+            case CITIZEN: {
+                NavigableMap<String, Set<String>> owners = descending ? table.byOwner.descendingMap() : table.byOwner;
+                return concat(owners.values().iterator(), ids -> {
+                    if (!descending) return ids.iterator();
+                    List<String> reversed = new ArrayList<>(ids);
+                    Collections.reverse(reversed);
+                    return reversed.iterator();
+                });
+            }
+            case STATUS: {
+                List<NavigableSet<TimeKey>> buckets = table.byStatus.bucketsByName();
+                if (descending) {
+                    Collections.reverse(buckets);
                 }
+                return concat(buckets.iterator(), bucket -> idsOf(descending ? bucket.descendingSet() : bucket));
             }
+            case DATE:
+                return idsOf(descending ? table.byTime.descendingSet() : table.byTime);
+            default:
+                throw new IllegalArgumentException("Unknown sort: " + sort);
         }
-        
-        return list;
     }
 
-    public List<JSONObject> getAllRequests() {
-        JSONArray arr = root.optJSONArray("requests");
-        List<JSONObject> list = new ArrayList<>();
-        
-        if (arr != null) {
-            for (int i = 0; i < arr.length(); i++) {
-                try {
-                    list.add(arr.getJSONObject(i));
-                } catch (org.json.JSONException e) {
-                    System.err.println("Error reading request: " + e.getMessage());
+    private static Iterator<String> idsOf(NavigableSet<TimeKey> keys) {
+        Iterator<TimeKey> it = keys.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return it.next().id;
+            }
+        };
+    }
+
+    /**
+     * The ids of each group in turn.
+     */
+    private static <G> Iterator<String> concat(Iterator<G> groups, Function<G, Iterator<String>> idsOf) {
+        return new Iterator<>() {
+            Iterator<String> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && groups.hasNext()) {
+                    current = idsOf.apply(groups.next());
                 }
+                return current.hasNext();
             }
+
+            @Override
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+
+    // ------- MAPPING -------
+
+    private static JSONObject toJson(Citizen c) {
+        return new JSONObject()
+                .put("id", c.getId())
+                .put("name", c.getName())
+                .put("email", c.getEmail())
+                .put("number", c.getNumber());
+    }
+
+    private static Citizen toCitizen(JSONObject obj) {
+        return new Citizen(obj.getString("id"), obj.getString("name"), obj.getString("number"), obj.getString("email"));
+    }
+
+    private static JSONObject toJson(Document d) {
+        return new JSONObject()
+                .put("id", d.getId())
+                .put("ownerId", d.getCitizenId())
+                .put("status", d.getStatus().name())
+                .put("uploadTime", d.getUploadTimeMillis());
+    }
+
+    private static Document toDocument(JSONObject obj) {
+        Document doc = new Document(obj.getString("id"), obj.getString("ownerId"), timestamp(obj, "uploadTime"));
+        doc.setStatus(Document.Status.valueOf(obj.getString("status")));
+        return doc;
+    }
+
+    private static JSONObject toJson(ServiceRequest r) {
+        return new JSONObject()
+                .put("id", r.getId())
+                .put("citizenId", r.getCitizenId())
+                .put("type", r.getServiceType())
+                .put("description", r.getDescription())
+                .put("status", r.getStatus().name())
+                .put("date", r.getDateMillis());
+    }
+
+    private static ServiceRequest toRequest(JSONObject obj) {
+        ServiceRequest sr = new ServiceRequest(obj.getString("id"), obj.getString("citizenId"),
+                obj.getString("type"), obj.optString("description", ""), timestamp(obj, "date"));
+        sr.setStatus(ServiceRequest.Status.valueOf(obj.getString("status")));
+        return sr;
+    }
+
+    /**
+     * Read a timestamp stored as epoch milliseconds. Older files hold an ISO
+     * local date-time instead, or no timestamp at all, in which case the
+     * record is dated when it is first loaded.
+     */
+    private static long timestamp(JSONObject obj, String key) {
+        Object value = obj.opt(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
         }
-        
-        return list;
+        if (value instanceof String) {
+            try {
+                return LocalDateTime.parse((String) value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                throw new org.json.JSONException("Invalid " + key + ": " + value);
+            }
+        }
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized String findCitizenIdByEmail(String email) {
+        return citizenIdByEmail.get(normalizeEmail(email));
+    }
+
+    @Override
+    public synchronized boolean isEmailTaken(String email, String exceptCitizenId) {
+        String ownerId = findCitizenIdByEmail(email);
+        return ownerId != null && !ownerId.equals(exceptCitizenId);
     }
-}
\ No newline at end of file
+}
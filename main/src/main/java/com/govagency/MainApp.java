@@ -1,15 +1,11 @@
 package com.govagency;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import org.json.JSONObject;
-
 import com.govagency.controller.LoginController;
 import com.govagency.controller.MainController;
 import com.govagency.model.Citizen;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
@@ -17,28 +13,14 @@ import javafx.stage.Stage;
 public class MainApp extends Application {
 
     private Stage primaryStage;
-    private final Map<String, Citizen> citizenMap = new HashMap<>();
-    private LocalDatabase database;
+    private DataStore dataStore;
 
     @Override
     public void start(Stage primaryStage) {
         this.primaryStage = primaryStage;
-        this.database = new LocalDatabase();
-
-        // Load all citizens from database into memory
-        for (JSONObject obj : database.getAllCitizens()) {
-            String id = obj.getString("id");
-            String name = obj.getString("name");
-            String email = obj.getString("email");
-            String number = obj.getString("number");
-
-            Citizen c = new Citizen(id, name, number, email);
-            citizenMap.put(id, c);
-            
-            System.out.println("Loaded citizen: " + email + " (ID: " + id + ")");
-        }
 
-        System.out.println("Total citizens loaded: " + citizenMap.size());
+        // Load the database once, in the background; every screen shares this store
+        this.dataStore = new DataStore(Repository::fromSystemProperties, Platform::runLater);
 
         // Set primary stage properties
         primaryStage.setTitle("Government Agency Information System");
@@ -52,7 +34,7 @@ public class MainApp extends Application {
     }
 
     private void showLogin() {
-        LoginController loginController = new LoginController(this, citizenMap);
+        LoginController loginController = new LoginController(this, dataStore);
         Scene loginScene = new Scene((Parent) loginController.getView(), 1000, 700);
         primaryStage.setScene(loginScene);
     }
@@ -63,11 +45,18 @@ public class MainApp extends Application {
      * @param citizen logged in citizen or null if admin
      */
     public void showMainApp(boolean isAdmin, Citizen citizen) {
-        MainController mainController = new MainController(isAdmin, citizen, citizenMap);
+        MainController mainController = new MainController(isAdmin, citizen, dataStore);
         Scene mainScene = new Scene((Parent) mainController.getView(), 1400, 900);
         primaryStage.setScene(mainScene);
     }
 
+    @Override
+    public void stop() {
+        if (dataStore != null) {
+            dataStore.close();
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
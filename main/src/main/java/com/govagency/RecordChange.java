@@ -0,0 +1,44 @@
+package com.govagency;
+
+/**
+ * One record added, updated or removed through a {@link Repository}.
+ */
+public final class RecordChange {
+
+    public enum Type {
+        /** Stored by an add method, replacing any record with the same id. */
+        ADDED,
+        UPDATED,
+        REMOVED
+    }
+
+    private final Type type;
+    private final Class<?> recordType;
+    private final String id;
+
+    /**
+     * @param recordType {@code Citizen.class}, {@code Document.class} or {@code ServiceRequest.class}
+     */
+    public RecordChange(Type type, Class<?> recordType, String id) {
+        this.type = type;
+        this.recordType = recordType;
+        this.id = id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Class<?> getRecordType() {
+        return recordType;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + recordType.getSimpleName() + " " + id;
+    }
+}
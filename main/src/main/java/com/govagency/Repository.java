@@ -0,0 +1,194 @@
+package com.govagency;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.govagency.model.Citizen;
+import com.govagency.model.Document;
+import com.govagency.model.ServiceRequest;
+import com.govagency.util.SortKey;
+
+/**
+ * Storage backend for citizens, documents and service requests.
+ *
+ * <p>Implementations are thread-safe. Adding a citizen, or changing a
+ * citizen's email, to an email another citizen already uses (ignoring case)
+ * fails with {@link IllegalArgumentException}. So does adding or reopening a
+ * service request while the citizen has another open (REQUESTED or
+ * PROCESSING) request for the same service type, ignoring case.
+ *
+ * <p>Getters may hand out the repository's own objects instead of copies,
+ * so they are read-only: a caller must never call their setters, as the
+ * repository's indexes are keyed on their fields. Changes go through the
+ * update methods; a later update is not reflected in objects already returned.
+ *
+ * <p>A change that cannot be stored fails with {@link IllegalStateException}
+ * and leaves the record as it was.
+ */
+public interface Repository {
+
+    /**
+     * Open the backend selected with {@code -Dgovagency.backend=json|sql} (default json).
+     */
+    static Repository fromSystemProperties() {
+        String backend = System.getProperty("govagency.backend", "json").trim().toLowerCase(Locale.ROOT);
+        switch (backend) {
+            case "json":
+                return new LocalDatabase();
+            case "sql":
+                return new SqlDatabase();
+            default:
+                throw new IllegalArgumentException("Unknown storage backend: " + backend);
+        }
+    }
+
+    // ------- CITIZENS -------
+    void addCitizen(Citizen c);
+
+    void updateCitizen(String citizenId, Citizen c);
+
+    void deleteCitizen(String citizenId);
+
+    /**
+     * Pass every citizen to {@code action} in insertion order, without building a list.
+     * The repository is locked meanwhile, so {@code action} must not call back into it.
+     */
+    void forEachCitizen(Consumer<? super Citizen> action);
+
+    /**
+     * Look up a citizen by email, ignoring case and surrounding whitespace.
+     * @return the citizen id, or null if no citizen uses this email
+     */
+    String findCitizenIdByEmail(String email);
+
+    /**
+     * @param exceptCitizenId citizen allowed to own the email (the one being edited), or null
+     */
+    boolean isEmailTaken(String email, String exceptCitizenId);
+
+    /**
+     * Up to {@code limit} citizens starting at {@code offset}, read through an
+     * index in {@code sort} order, so the first page costs the same at any size.
+     * Citizens can only be sorted by {@link SortKey#ID}; other keys fail with
+     * {@link IllegalArgumentException}.
+     */
+    List<Citizen> getCitizenPage(int offset, int limit, SortKey sort, boolean descending);
+
+    int getCitizenCount();
+
+    // ------- DOCUMENTS -------
+    void addDocument(Document d);
+
+    /**
+     * Store the document's current status.
+     */
+    void updateDocument(String documentId, Document d);
+
+    void deleteDocument(String documentId);
+
+    /**
+     * Pass every document to {@code action} in upload order; see {@link #forEachCitizen}.
+     */
+    void forEachDocument(Consumer<? super Document> action);
+
+    /**
+     * A citizen's documents in upload order.
+     */
+    List<Document> getDocumentsByCitizen(String citizenId);
+
+    /**
+     * Up to {@code limit} documents in {@code sort} order, starting at {@code offset}; see {@link #getCitizenPage}.
+     */
+    List<Document> getDocumentPage(int offset, int limit, SortKey sort, boolean descending);
+
+    int getDocumentCount();
+
+    /**
+     * Documents uploaded at or after {@code from} and before {@code to}
+     * (epoch milliseconds), oldest first, found through a time index.
+     */
+    List<Document> getDocumentsUploadedBetween(long from, long to);
+
+    /**
+     * The {@code limit} oldest documents with this status, the head of that work queue.
+     */
+    List<Document> getDocumentsByStatus(Document.Status status, int limit);
+
+    /**
+     * Documents with this status uploaded before {@code before} (epoch
+     * milliseconds), oldest first, read from the same status-and-time index.
+     */
+    List<Document> getDocumentsByStatusUploadedBefore(Document.Status status, long before);
+
+    /**
+     * Number of documents with each status.
+     */
+    Map<Document.Status, Integer> getDocumentCountsByStatus();
+
+    // ------- REQUESTS -------
+    void addRequest(ServiceRequest r);
+
+    /**
+     * Store the request's current status.
+     */
+    void updateRequest(String requestId, ServiceRequest r);
+
+    void deleteRequest(String requestId);
+
+    /**
+     * Pass every service request to {@code action} in submission order; see {@link #forEachCitizen}.
+     */
+    void forEachRequest(Consumer<? super ServiceRequest> action);
+
+    /**
+     * @return the service request with this id, or null if there is none
+     */
+    ServiceRequest getRequest(String requestId);
+
+    /**
+     * A citizen's service requests in submission order.
+     */
+    List<ServiceRequest> getRequestsByCitizen(String citizenId);
+
+    /**
+     * Up to {@code limit} service requests in {@code sort} order, starting at {@code offset}; see {@link #getCitizenPage}.
+     */
+    List<ServiceRequest> getRequestPage(int offset, int limit, SortKey sort, boolean descending);
+
+    int getRequestCount();
+
+    /**
+     * Service requests submitted at or after {@code from} and before {@code to}
+     * (epoch milliseconds), oldest first, found through a time index.
+     */
+    List<ServiceRequest> getRequestsSubmittedBetween(long from, long to);
+
+    /**
+     * The {@code limit} oldest service requests with this status, the head of that work queue.
+     */
+    List<ServiceRequest> getRequestsByStatus(ServiceRequest.Status status, int limit);
+
+    /**
+     * Number of service requests with each status.
+     */
+    Map<ServiceRequest.Status, Integer> getRequestCountsByStatus();
+
+    /**
+     * Tell {@code listener} about every record added, updated or removed from now
+     * on. It is called on the writing thread once the change is applied, and
+     * must not call back into the repository.
+     */
+    void addChangeListener(Consumer<? super RecordChange> listener);
+
+    /**
+     * Block until every change made so far is durable.
+     */
+    void flush();
+
+    /**
+     * Flush and release the backend. Safe to call more than once.
+     */
+    void close();
+}
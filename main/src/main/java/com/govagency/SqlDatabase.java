@@ -0,0 +1,817 @@
+package com.govagency;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import com.govagency.model.Citizen;
+import com.govagency.model.Document;
+import com.govagency.model.ServiceRequest;
+import com.govagency.util.SortKey;
+
+/**
+ * {@link Repository} backed by an embedded H2 database file (database.mv.db).
+ *
+ * <p>Every statement is prepared once when the database opens. Lookups by id,
+ * citizen, status and date go through indexes, so they stay fast however many
+ * requests are stored. The JDBC URL can be overridden with
+ * {@code -Dgovagency.sql.url=...}.
+ */
+public class SqlDatabase implements Repository {
+
+    private static final String DEFAULT_URL = "jdbc:h2:./database";
+
+    // SQLSTATE of a unique constraint violation
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    // seq keeps insertion order for listings; rows are never renumbered.
+    // Timestamps are epoch milliseconds so range conditions compare numbers.
+    // Id lengths let the sorted listings order ids like SortKey.ID_ORDER through an index
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS citizens ("
+                    + " seq BIGINT GENERATED BY DEFAULT AS IDENTITY,"
+                    + " id VARCHAR PRIMARY KEY,"
+                    + " name VARCHAR NOT NULL,"
+                    + " email VARCHAR NOT NULL,"
+                    + " email_key VARCHAR NOT NULL UNIQUE,"
+                    + " number VARCHAR NOT NULL,"
+                    + " id_len INT GENERATED ALWAYS AS (CHAR_LENGTH(id)))",
+            "CREATE TABLE IF NOT EXISTS documents ("
+                    + " seq BIGINT GENERATED BY DEFAULT AS IDENTITY,"
+                    + " id VARCHAR PRIMARY KEY,"
+                    + " citizen_id VARCHAR NOT NULL,"
+                    + " status VARCHAR NOT NULL,"
+                    + " upload_time BIGINT NOT NULL,"
+                    + " id_len INT GENERATED ALWAYS AS (CHAR_LENGTH(id)),"
+                    + " citizen_len INT GENERATED ALWAYS AS (CHAR_LENGTH(citizen_id)))",
+            // Rows per status of documents and requests, changed in the same transaction as the rows
+            "CREATE TABLE IF NOT EXISTS status_counts ("
+                    + " record_table VARCHAR NOT NULL,"
+                    + " status VARCHAR NOT NULL,"
+                    + " n BIGINT NOT NULL,"
+                    + " PRIMARY KEY (record_table, status))",
+            "CREATE TABLE IF NOT EXISTS requests ("
+                    + " seq BIGINT GENERATED BY DEFAULT AS IDENTITY,"
+                    + " id VARCHAR PRIMARY KEY,"
+                    + " citizen_id VARCHAR NOT NULL,"
+                    + " type VARCHAR NOT NULL,"
+                    + " description VARCHAR NOT NULL,"
+                    + " status VARCHAR NOT NULL,"
+                    + " date BIGINT NOT NULL,"
+                    + " type_key VARCHAR NOT NULL,"
+                    // Set only while the request is open; unique, so a citizen has one open request per service
+                    + " open_key VARCHAR GENERATED ALWAYS AS (CASE WHEN status IN ('REQUESTED', 'PROCESSING')"
+                    + " THEN citizen_id || CHAR(0) || type_key END),"
+                    + " id_len INT GENERATED ALWAYS AS (CHAR_LENGTH(id)),"
+                    + " citizen_len INT GENERATED ALWAYS AS (CHAR_LENGTH(citizen_id)))",
+            // H2 only reads an index forwards, so each listing order has an index per direction
+            "CREATE UNIQUE INDEX IF NOT EXISTS citizens_seq ON citizens (seq)",
+            "CREATE INDEX IF NOT EXISTS citizens_id_order ON citizens (id_len, id)",
+            "CREATE INDEX IF NOT EXISTS citizens_id_order_desc ON citizens (id_len DESC, id DESC)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS documents_seq ON documents (seq)",
+            "CREATE INDEX IF NOT EXISTS documents_citizen ON documents (citizen_id, seq)",
+            "CREATE INDEX IF NOT EXISTS documents_id_order ON documents (id_len, id)",
+            "CREATE INDEX IF NOT EXISTS documents_id_order_desc ON documents (id_len DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS documents_citizen_order ON documents (citizen_len, citizen_id, seq)",
+            "CREATE INDEX IF NOT EXISTS documents_citizen_order_desc ON documents (citizen_len DESC, citizen_id DESC, seq DESC)",
+            "CREATE INDEX IF NOT EXISTS documents_status_time ON documents (status, upload_time, id)",
+            "CREATE INDEX IF NOT EXISTS documents_status_time_desc ON documents (status DESC, upload_time DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS documents_time ON documents (upload_time, id)",
+            "CREATE INDEX IF NOT EXISTS documents_time_desc ON documents (upload_time DESC, id DESC)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS requests_seq ON requests (seq)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS requests_open ON requests (open_key)",
+            "CREATE INDEX IF NOT EXISTS requests_citizen ON requests (citizen_id, seq)",
+            "CREATE INDEX IF NOT EXISTS requests_id_order ON requests (id_len, id)",
+            "CREATE INDEX IF NOT EXISTS requests_id_order_desc ON requests (id_len DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS requests_citizen_order ON requests (citizen_len, citizen_id, seq)",
+            "CREATE INDEX IF NOT EXISTS requests_citizen_order_desc ON requests (citizen_len DESC, citizen_id DESC, seq DESC)",
+            "CREATE INDEX IF NOT EXISTS requests_status_time ON requests (status, date, id)",
+            "CREATE INDEX IF NOT EXISTS requests_status_time_desc ON requests (status DESC, date DESC, id DESC)",
+            "CREATE INDEX IF NOT EXISTS requests_time ON requests (date, id)",
+            "CREATE INDEX IF NOT EXISTS requests_time_desc ON requests (date DESC, id DESC)"
+    };
+
+    // ORDER BY of each sorted listing; each matches an index, so a page is read straight from it
+    private static final Map<SortKey, String> CITIZEN_ORDER = Map.of(SortKey.ID, "id_len, id");
+    private static final Map<SortKey, String> DOCUMENT_ORDER = Map.of(
+            SortKey.ID, "id_len, id",
+            SortKey.CITIZEN, "citizen_len, citizen_id, seq",
+            SortKey.STATUS, "status, upload_time, id",
+            SortKey.DATE, "upload_time, id");
+    private static final Map<SortKey, String> REQUEST_ORDER = Map.of(
+            SortKey.ID, "id_len, id",
+            SortKey.CITIZEN, "citizen_len, citizen_id, seq",
+            SortKey.STATUS, "status, date, id",
+            SortKey.DATE, "date, id");
+
+    private static final String DOCUMENT_COLUMNS = "id, citizen_id, status, upload_time";
+    private static final String REQUEST_COLUMNS = "id, citizen_id, type, description, status, date";
+
+    private final Connection connection;
+    private boolean closed;
+
+    private final PreparedStatement putCitizen;
+    private final PreparedStatement updateCitizen;
+    private final PreparedStatement deleteCitizen;
+    private final PreparedStatement allCitizens;
+    private final PreparedStatement citizenIdByEmail;
+    private final Map<String, PreparedStatement> citizenPages;
+    private final PreparedStatement citizenCount;
+
+    private final PreparedStatement putDocument;
+    private final PreparedStatement updateDocument;
+    private final PreparedStatement deleteDocument;
+    private final PreparedStatement allDocuments;
+    private final PreparedStatement documentsByCitizen;
+    private final Map<String, PreparedStatement> documentPages;
+    private final PreparedStatement documentCount;
+    private final PreparedStatement documentsUploadedBetween;
+    private final PreparedStatement documentsByStatus;
+    private final PreparedStatement documentsByStatusUploadedBefore;
+    private final PreparedStatement documentCountsByStatus;
+    private final PreparedStatement documentStatusById;
+
+    private final PreparedStatement putRequest;
+    private final PreparedStatement updateRequest;
+    private final PreparedStatement deleteRequest;
+    private final PreparedStatement allRequests;
+    private final PreparedStatement requestById;
+    private final PreparedStatement requestsByCitizen;
+    private final Map<String, PreparedStatement> requestPages;
+    private final PreparedStatement requestCount;
+    private final PreparedStatement requestsSubmittedBetween;
+    private final PreparedStatement requestsByStatus;
+    private final PreparedStatement requestCountsByStatus;
+    private final PreparedStatement requestStatusById;
+
+    private final PreparedStatement addToStatusCount;
+    private final PreparedStatement insertStatusCount;
+
+    private final List<Consumer<? super RecordChange>> changeListeners = new CopyOnWriteArrayList<>();
+
+    public SqlDatabase() {
+        this(System.getProperty("govagency.sql.url", DEFAULT_URL));
+    }
+
+    public SqlDatabase(String url) {
+        long start = System.nanoTime();
+        try {
+            connection = DriverManager.getConnection(url);
+            try (Statement statement = connection.createStatement()) {
+                for (String ddl : SCHEMA) {
+                    statement.execute(ddl);
+                }
+            }
+
+            // MERGE ... KEY(id) replaces a record with the same id, like the JSON backend does
+            putCitizen = connection.prepareStatement(
+                    "MERGE INTO citizens (id, name, email, email_key, number) KEY(id) VALUES (?, ?, ?, ?, ?)");
+            updateCitizen = connection.prepareStatement(
+                    "UPDATE citizens SET name = ?, email = ?, email_key = ?, number = ? WHERE id = ?");
+            deleteCitizen = connection.prepareStatement("DELETE FROM citizens WHERE id = ?");
+            allCitizens = connection.prepareStatement("SELECT id, name, email, number FROM citizens ORDER BY seq");
+            citizenIdByEmail = connection.prepareStatement("SELECT id FROM citizens WHERE email_key = ?");
+            citizenPages = preparePages("SELECT id, name, email, number FROM citizens", CITIZEN_ORDER);
+            citizenCount = connection.prepareStatement("SELECT COUNT(*) FROM citizens");
+
+            putDocument = connection.prepareStatement(
+                    "MERGE INTO documents (" + DOCUMENT_COLUMNS + ") KEY(id) VALUES (?, ?, ?, ?)");
+            updateDocument = connection.prepareStatement("UPDATE documents SET status = ? WHERE id = ?");
+            deleteDocument = connection.prepareStatement("DELETE FROM documents WHERE id = ?");
+            allDocuments = connection.prepareStatement("SELECT " + DOCUMENT_COLUMNS + " FROM documents ORDER BY seq");
+            documentsByCitizen = connection.prepareStatement(
+                    "SELECT " + DOCUMENT_COLUMNS + " FROM documents WHERE citizen_id = ? ORDER BY seq");
+            documentPages = preparePages("SELECT " + DOCUMENT_COLUMNS + " FROM documents", DOCUMENT_ORDER);
+            documentCount = connection.prepareStatement("SELECT COUNT(*) FROM documents");
+            documentsUploadedBetween = connection.prepareStatement("SELECT " + DOCUMENT_COLUMNS
+                    + " FROM documents WHERE upload_time >= ? AND upload_time < ? ORDER BY upload_time, id");
+            documentsByStatus = connection.prepareStatement("SELECT " + DOCUMENT_COLUMNS
+                    + " FROM documents WHERE status = ? ORDER BY upload_time, id LIMIT ?");
+            documentsByStatusUploadedBefore = connection.prepareStatement("SELECT " + DOCUMENT_COLUMNS
+                    + " FROM documents WHERE status = ? AND upload_time < ? ORDER BY upload_time, id");
+            documentCountsByStatus = connection.prepareStatement(
+                    "SELECT status, n FROM status_counts WHERE record_table = 'documents'");
+            documentStatusById = connection.prepareStatement("SELECT status FROM documents WHERE id = ?");
+
+            putRequest = connection.prepareStatement(
+                    "MERGE INTO requests (" + REQUEST_COLUMNS + ", type_key) KEY(id) VALUES (?, ?, ?, ?, ?, ?, ?)");
+            updateRequest = connection.prepareStatement("UPDATE requests SET status = ? WHERE id = ?");
+            deleteRequest = connection.prepareStatement("DELETE FROM requests WHERE id = ?");
+            allRequests = connection.prepareStatement("SELECT " + REQUEST_COLUMNS + " FROM requests ORDER BY seq");
+            requestById = connection.prepareStatement("SELECT " + REQUEST_COLUMNS + " FROM requests WHERE id = ?");
+            requestsByCitizen = connection.prepareStatement(
+                    "SELECT " + REQUEST_COLUMNS + " FROM requests WHERE citizen_id = ? ORDER BY seq");
+            requestPages = preparePages("SELECT " + REQUEST_COLUMNS + " FROM requests", REQUEST_ORDER);
+            requestCount = connection.prepareStatement("SELECT COUNT(*) FROM requests");
+            requestsSubmittedBetween = connection.prepareStatement("SELECT " + REQUEST_COLUMNS
+                    + " FROM requests WHERE date >= ? AND date < ? ORDER BY date, id");
+            requestsByStatus = connection.prepareStatement("SELECT " + REQUEST_COLUMNS
+                    + " FROM requests WHERE status = ? ORDER BY date, id LIMIT ?");
+            requestCountsByStatus = connection.prepareStatement(
+                    "SELECT status, n FROM status_counts WHERE record_table = 'requests'");
+            requestStatusById = connection.prepareStatement("SELECT status FROM requests WHERE id = ?");
+
+            addToStatusCount = connection.prepareStatement(
+                    "UPDATE status_counts SET n = n + ? WHERE record_table = ? AND status = ?");
+            insertStatusCount = connection.prepareStatement(
+                    "INSERT INTO status_counts (record_table, status, n) VALUES (?, ?, ?)");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error opening SQL database " + url + ": " + e.getMessage(), e);
+        }
+
+        System.out.printf("SQL database opened in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "govagency-shutdown"));
+    }
+
+    /**
+     * One page query per sort key and direction, keyed by {@link #pageKey}.
+     */
+    private Map<String, PreparedStatement> preparePages(String select, Map<SortKey, String> orders) throws SQLException {
+        Map<String, PreparedStatement> pages = new LinkedHashMap<>();
+        for (Map.Entry<SortKey, String> order : orders.entrySet()) {
+            String ascending = order.getValue();
+            String descending = ascending.replace(",", " DESC,") + " DESC";
+            pages.put(pageKey(order.getKey(), false),
+                    connection.prepareStatement(select + " ORDER BY " + ascending + " LIMIT ? OFFSET ?"));
+            pages.put(pageKey(order.getKey(), true),
+                    connection.prepareStatement(select + " ORDER BY " + descending + " LIMIT ? OFFSET ?"));
+        }
+        return pages;
+    }
+
+    private static String pageKey(SortKey sort, boolean descending) {
+        return sort + (descending ? " DESC" : "");
+    }
+
+    private static PreparedStatement pageQuery(Map<String, PreparedStatement> pages, String table, SortKey sort,
+                                               boolean descending, int offset, int limit) throws SQLException {
+        PreparedStatement query = pages.get(pageKey(sort, descending));
+        if (query == null) {
+            throw new IllegalArgumentException("Cannot sort " + table + " by " + sort);
+        }
+        query.setInt(1, limit);
+        query.setInt(2, offset);
+        return query;
+    }
+
+    private static String normalizeEmail(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isUniqueViolation(SQLException e) {
+        return UNIQUE_VIOLATION.equals(e.getSQLState());
+    }
+
+    /**
+     * Statements that must take effect together; returns whether a row changed.
+     */
+    @FunctionalInterface
+    private interface Transaction {
+        boolean run() throws SQLException;
+    }
+
+    private boolean inTransaction(Transaction work) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            boolean changed = work.run();
+            connection.commit();
+            return changed;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * @return the status of the row with this id, or null if there is none
+     */
+    private static String statusOf(PreparedStatement query, String id) throws SQLException {
+        query.setString(1, id);
+        try (ResultSet rs = query.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    /**
+     * Move a row between status counts; {@code before} is null for a new row, {@code after} for a deleted one.
+     */
+    private void countStatusChange(String table, String before, String after) throws SQLException {
+        if (before != null && before.equals(after)) return;
+        if (before != null) {
+            addToStatusCount(table, before, -1);
+        }
+        if (after != null) {
+            addToStatusCount(table, after, 1);
+        }
+    }
+
+    private void addToStatusCount(String table, String status, int delta) throws SQLException {
+        addToStatusCount.setInt(1, delta);
+        addToStatusCount.setString(2, table);
+        addToStatusCount.setString(3, status);
+        if (addToStatusCount.executeUpdate() == 0) {
+            insertStatusCount.setString(1, table);
+            insertStatusCount.setString(2, status);
+            insertStatusCount.setInt(3, delta);
+            insertStatusCount.executeUpdate();
+        }
+    }
+
+    @Override
+    public void addChangeListener(Consumer<? super RecordChange> listener) {
+        changeListeners.add(listener);
+    }
+
+    // Only called once a statement changed a row
+    private void publish(RecordChange.Type type, Class<?> recordType, String id) {
+        RecordChange change = new RecordChange(type, recordType, id);
+        for (Consumer<? super RecordChange> listener : changeListeners) {
+            listener.accept(change);
+        }
+    }
+
+    // ------- CITIZENS -------
+    @Override
+    public synchronized void addCitizen(Citizen c) {
+        if (isEmailTaken(c.getEmail(), c.getId())) {
+            throw new IllegalArgumentException("Email already in use.");
+        }
+        try {
+            putCitizen.setString(1, c.getId());
+            putCitizen.setString(2, c.getName());
+            putCitizen.setString(3, c.getEmail());
+            putCitizen.setString(4, normalizeEmail(c.getEmail()));
+            putCitizen.setString(5, c.getNumber());
+            putCitizen.executeUpdate();
+            publish(RecordChange.Type.ADDED, Citizen.class, c.getId());
+        } catch (SQLException e) {
+            if (isUniqueViolation(e)) {
+                throw new IllegalArgumentException("Email already in use.");
+            }
+            throw new IllegalStateException("Error adding citizen: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void deleteCitizen(String citizenId) {
+        try {
+            deleteCitizen.setString(1, citizenId);
+            if (deleteCitizen.executeUpdate() > 0) {
+                publish(RecordChange.Type.REMOVED, Citizen.class, citizenId);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error deleting citizen: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void updateCitizen(String citizenId, Citizen c) {
+        if (isEmailTaken(c.getEmail(), citizenId)) {
+            throw new IllegalArgumentException("Email already in use by another citizen.");
+        }
+        try {
+            updateCitizen.setString(1, c.getName());
+            updateCitizen.setString(2, c.getEmail());
+            updateCitizen.setString(3, normalizeEmail(c.getEmail()));
+            updateCitizen.setString(4, c.getNumber());
+            updateCitizen.setString(5, citizenId);
+            if (updateCitizen.executeUpdate() > 0) {
+                publish(RecordChange.Type.UPDATED, Citizen.class, citizenId);
+            }
+        } catch (SQLException e) {
+            if (isUniqueViolation(e)) {
+                throw new IllegalArgumentException("Email already in use by another citizen.");
+            }
+            throw new IllegalStateException("Error updating citizen: " + e.getMessage(), e);
+        }
+    }
+
+    // Rows are streamed from the result set, never collected into a list
+    @Override
+    public synchronized void forEachCitizen(Consumer<? super Citizen> action) {
+        try (ResultSet rs = allCitizens.executeQuery()) {
+            while (rs.next()) {
+                action.accept(new Citizen(rs.getString("id"), rs.getString("name"), rs.getString("number"), rs.getString("email")));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading citizens: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized String findCitizenIdByEmail(String email) {
+        try {
+            citizenIdByEmail.setString(1, normalizeEmail(email));
+            try (ResultSet rs = citizenIdByEmail.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error looking up email: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isEmailTaken(String email, String exceptCitizenId) {
+        String ownerId = findCitizenIdByEmail(email);
+        return ownerId != null && !ownerId.equals(exceptCitizenId);
+    }
+
+    @Override
+    public synchronized List<Citizen> getCitizenPage(int offset, int limit, SortKey sort, boolean descending) {
+        List<Citizen> result = new ArrayList<>();
+        try (ResultSet rs = pageQuery(citizenPages, "citizens", sort, descending, offset, limit).executeQuery()) {
+            while (rs.next()) {
+                result.add(new Citizen(rs.getString("id"), rs.getString("name"), rs.getString("number"), rs.getString("email")));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading citizens: " + e.getMessage());
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized int getCitizenCount() {
+        return count(citizenCount, "citizens");
+    }
+
+    // ------- DOCUMENTS -------
+    @Override
+    public synchronized void addDocument(Document d) {
+        try {
+            putDocument.setString(1, d.getId());
+            putDocument.setString(2, d.getCitizenId());
+            putDocument.setString(3, d.getStatus().name());
+            putDocument.setLong(4, d.getUploadTimeMillis());
+            inTransaction(() -> {
+                String before = statusOf(documentStatusById, d.getId());
+                putDocument.executeUpdate();
+                countStatusChange("documents", before, d.getStatus().name());
+                return true;
+            });
+            publish(RecordChange.Type.ADDED, Document.class, d.getId());
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error adding document: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void deleteDocument(String documentId) {
+        try {
+            deleteDocument.setString(1, documentId);
+            boolean deleted = inTransaction(() -> {
+                String before = statusOf(documentStatusById, documentId);
+                if (before == null || deleteDocument.executeUpdate() == 0) return false;
+                countStatusChange("documents", before, null);
+                return true;
+            });
+            if (deleted) {
+                publish(RecordChange.Type.REMOVED, Document.class, documentId);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error deleting document: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void updateDocument(String documentId, Document d) {
+        try {
+            updateDocument.setString(1, d.getStatus().name());
+            updateDocument.setString(2, documentId);
+            boolean updated = inTransaction(() -> {
+                String before = statusOf(documentStatusById, documentId);
+                if (before == null || updateDocument.executeUpdate() == 0) return false;
+                countStatusChange("documents", before, d.getStatus().name());
+                return true;
+            });
+            if (updated) {
+                publish(RecordChange.Type.UPDATED, Document.class, documentId);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error updating document: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void forEachDocument(Consumer<? super Document> action) {
+        try (ResultSet rs = allDocuments.executeQuery()) {
+            while (rs.next()) {
+                action.accept(toDocument(rs));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading documents: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized List<Document> getDocumentsByCitizen(String citizenId) {
+        try {
+            documentsByCitizen.setString(1, citizenId);
+            return readDocuments(documentsByCitizen);
+        } catch (SQLException e) {
+            System.err.println("Error loading documents: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public synchronized List<Document> getDocumentPage(int offset, int limit, SortKey sort, boolean descending) {
+        try {
+            return readDocuments(pageQuery(documentPages, "documents", sort, descending, offset, limit));
+        } catch (SQLException e) {
+            System.err.println("Error loading documents: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public synchronized int getDocumentCount() {
+        return count(documentCount, "documents");
+    }
+
+    @Override
+    public synchronized List<Document> getDocumentsUploadedBetween(long from, long to) {
+        try {
+            documentsUploadedBetween.setLong(1, from);
+            documentsUploadedBetween.setLong(2, to);
+            return readDocuments(documentsUploadedBetween);
+        } catch (SQLException e) {
+            System.err.println("Error loading documents: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public synchronized List<Document> getDocumentsByStatus(Document.Status status, int limit) {
+        try {
+            documentsByStatus.setString(1, status.name());
+            documentsByStatus.setInt(2, limit);
+            return readDocuments(documentsByStatus);
+        } catch (SQLException e) {
+            System.err.println("Error loading documents: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public synchronized List<Document> getDocumentsByStatusUploadedBefore(Document.Status status, long before) {
+        try {
+            documentsByStatusUploadedBefore.setString(1, status.name());
+            documentsByStatusUploadedBefore.setLong(2, before);
+            return readDocuments(documentsByStatusUploadedBefore);
+        } catch (SQLException e) {
+            System.err.println("Error loading documents: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public synchronized Map<Document.Status, Integer> getDocumentCountsByStatus() {
+        return countByStatus(documentCountsByStatus, Document.Status.class, "documents");
+    }
+
+    private static List<Document> readDocuments(PreparedStatement query) throws SQLException {
+        List<Document> result = new ArrayList<>();
+        try (ResultSet rs = query.executeQuery()) {
+            while (rs.next()) {
+                result.add(toDocument(rs));
+            }
+        }
+        return result;
+    }
+
+    private static Document toDocument(ResultSet rs) throws SQLException {
+        Document doc = new Document(rs.getString("id"), rs.getString("citizen_id"), rs.getLong("upload_time"));
+        doc.setStatus(Document.Status.valueOf(rs.getString("status")));
+        return doc;
+    }
+
+    // ------- REQUESTS -------
+    @Override
+    public synchronized void addRequest(ServiceRequest r) {
+        try {
+            putRequest.setString(1, r.getId());
+            putRequest.setString(2, r.getCitizenId());
+            putRequest.setString(3, r.getServiceType());
+            putRequest.setString(4, r.getDescription());
+            putRequest.setString(5, r.getStatus().name());
+            putRequest.setLong(6, r.getDateMillis());
+            putRequest.setString(7, r.getServiceType().trim().toLowerCase(Locale.ROOT));
+            inTransaction(() -> {
+                String before = statusOf(requestStatusById, r.getId());
+                putRequest.executeUpdate();
+                countStatusChange("requests", before, r.getStatus().name());
+                return true;
+            });
+            publish(RecordChange.Type.ADDED, ServiceRequest.class, r.getId());
+        } catch (SQLException e) {
+            if (isUniqueViolation(e)) {
+                throw new IllegalArgumentException("You already have a pending request for: " + r.getServiceType()
+                        + "\n\nPlease wait for it to be processed or contact an administrator.");
+            }
+            throw new IllegalStateException("Error adding request: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void deleteRequest(String requestId) {
+        try {
+            deleteRequest.setString(1, requestId);
+            boolean deleted = inTransaction(() -> {
+                String before = statusOf(requestStatusById, requestId);
+                if (before == null || deleteRequest.executeUpdate() == 0) return false;
+                countStatusChange("requests", before, null);
+                return true;
+            });
+            if (deleted) {
+                publish(RecordChange.Type.REMOVED, ServiceRequest.class, requestId);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error deleting request: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void updateRequest(String requestId, ServiceRequest r) {
+        try {
+            updateRequest.setString(1, r.getStatus().name());
+            updateRequest.setString(2, requestId);
+            boolean updated = inTransaction(() -> {
+                String before = statusOf(requestStatusById, requestId);
+                if (before == null || updateRequest.executeUpdate() == 0) return false;
+                countStatusChange("requests", before, r.getStatus().name());
+                return true;
+            });
+            if (updated) {
+                publish(RecordChange.Type.UPDATED, ServiceRequest.class, requestId);
+            }
+        } catch (SQLException e) {
+            if (isUniqueViolation(e)) {
+                throw new IllegalArgumentException("Another pending request for this service already exists.");
+            }
+            throw new IllegalStateException("Error updating request: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void forEachRequest(Consumer<? super ServiceRequest> action) {
+        try (ResultSet rs = allRequests.executeQuery()) {
+            while (rs.next()) {
+                action.accept(toRequest(rs));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading requests: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized ServiceRequest getRequest(String requestId) {
+        try {
+            requestById.setString(1, requestId);
+            List<ServiceRequest> found = readRequests(requestById);
+            return found.isEmpty() ? null : found.get(0);
+        } catch (SQLException e) {
+            System.err.println("Error loading request: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized List<ServiceRequest> getRequestsByCitizen(String citizenId) {
+        try {
+            requestsByCitizen.setString(1, citizenId);
+            return readRequests(requestsByCitizen);
+        } catch (SQLException e) {
+            System.err.println("Error loading requests: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public synchronized List<ServiceRequest> getRequestPage(int offset, int limit, SortKey sort, boolean descending) {
+        try {
+            return readRequests(pageQuery(requestPages, "requests", sort, descending, offset, limit));
+        } catch (SQLException e) {
+            System.err.println("Error loading requests: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public synchronized int getRequestCount() {
+        return count(requestCount, "requests");
+    }
+
+    @Override
+    public synchronized List<ServiceRequest> getRequestsSubmittedBetween(long from, long to) {
+        try {
+            requestsSubmittedBetween.setLong(1, from);
+            requestsSubmittedBetween.setLong(2, to);
+            return readRequests(requestsSubmittedBetween);
+        } catch (SQLException e) {
+            System.err.println("Error loading requests: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public synchronized List<ServiceRequest> getRequestsByStatus(ServiceRequest.Status status, int limit) {
+        try {
+            requestsByStatus.setString(1, status.name());
+            requestsByStatus.setInt(2, limit);
+            return readRequests(requestsByStatus);
+        } catch (SQLException e) {
+            System.err.println("Error loading requests: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public synchronized Map<ServiceRequest.Status, Integer> getRequestCountsByStatus() {
+        return countByStatus(requestCountsByStatus, ServiceRequest.Status.class, "requests");
+    }
+
+    private static List<ServiceRequest> readRequests(PreparedStatement query) throws SQLException {
+        List<ServiceRequest> result = new ArrayList<>();
+        try (ResultSet rs = query.executeQuery()) {
+            while (rs.next()) {
+                result.add(toRequest(rs));
+            }
+        }
+        return result;
+    }
+
+    private static ServiceRequest toRequest(ResultSet rs) throws SQLException {
+        ServiceRequest sr = new ServiceRequest(rs.getString("id"), rs.getString("citizen_id"),
+                rs.getString("type"), rs.getString("description"), rs.getLong("date"));
+        sr.setStatus(ServiceRequest.Status.valueOf(rs.getString("status")));
+        return sr;
+    }
+
+    // One row per status, so the cost does not grow with the table
+    private static <S extends Enum<S>> Map<S, Integer> countByStatus(PreparedStatement query, Class<S> type, String table) {
+        Map<S, Integer> counts = new EnumMap<>(type);
+        for (S status : type.getEnumConstants()) {
+            counts.put(status, 0);
+        }
+        try (ResultSet rs = query.executeQuery()) {
+            while (rs.next()) {
+                counts.put(Enum.valueOf(type, rs.getString(1)), rs.getInt(2));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error counting " + table + ": " + e.getMessage());
+        }
+        return counts;
+    }
+
+    private static int count(PreparedStatement query, String table) {
+        try (ResultSet rs = query.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            System.err.println("Error counting " + table + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Write committed changes out to the database file.
+     */
+    @Override
+    public synchronized void flush() {
+        if (closed) return;
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CHECKPOINT");
+        } catch (SQLException e) {
+            System.err.println("Error flushing SQL database: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Close the connection, which closes the database file. Safe to call more
+     * than once; also runs from a shutdown hook.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing SQL database: " + e.getMessage());
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.govagency.controller;
 
-import java.util.Map;
-
+import com.govagency.DataStore;
 import com.govagency.MainApp;
 import com.govagency.model.Citizen;
 
@@ -29,7 +28,7 @@ public class LoginController {
 
     private final StackPane root;
     private final MainApp mainApp;
-    private final Map<String, Citizen> citizenMap;
+    private final DataStore dataStore;
 
     // Enhanced Dark Theme Colors
     private static final String DARK_BG = "#0d1117";
@@ -48,9 +47,9 @@ public class LoginController {
     private PasswordField passwordField;
     private Button loginButton;
 
-    public LoginController(MainApp mainApp, Map<String, Citizen> citizenMap) {
+    public LoginController(MainApp mainApp, DataStore dataStore) {
         this.mainApp = mainApp;
-        this.citizenMap = citizenMap;
+        this.dataStore = dataStore;
 
         // Background - Full Screen
         root = new StackPane();
@@ -61,6 +60,20 @@ public class LoginController {
         VBox mainContainer = createMainContainer();
         
         root.getChildren().add(mainContainer);
+
+        // Records load in the background; sign-in waits for them
+        loginButton.setDisable(true);
+        messageText.setText("⏳ Loading records...");
+        messageText.setFill(Color.web(TEXT_GRAY));
+        dataStore.whenLoaded().whenComplete((ignored, error) -> {
+            if (error != null) {
+                System.err.println("Error loading database: " + error.getMessage());
+                showError("❌ Could not load the database. Please restart the application.");
+                return;
+            }
+            loginButton.setDisable(false);
+            messageText.setText("");
+        });
     }
 
     private VBox createMainContainer() {
@@ -377,6 +390,10 @@ public class LoginController {
     }
 
     private void handleLogin() {
+        if (loginButton.isDisable()) {
+            return;
+        }
+
         String email = usernameField.getText().trim().toLowerCase();  // Convert to lowercase
         String phonePassword = passwordField.getText().trim();
 
@@ -397,41 +414,35 @@ public class LoginController {
         }
         // Citizen login - email and phone number
         else {
-            // Debug: Print all citizens in the map
-            System.out.println("Total citizens in map: " + citizenMap.size());
-            for (Citizen c : citizenMap.values()) {
-                System.out.println("Citizen: " + c.getEmail() + " (ID: " + c.getId() + ")");
-            }
             System.out.println("Looking for email: " + email);
 
-            Citizen citizen = null;
-            
-            // Search for citizen by email (case-insensitive)
-            for (Citizen c : citizenMap.values()) {
-                if (c.getEmail().trim().toLowerCase().equals(email)) {
-                    citizen = c;
-                    break;
+            // Resolve citizen through the email index (case-insensitive), off the FX thread
+            dataStore.findCitizenByEmail(email).whenComplete((citizen, error) -> {
+                if (error != null) {
+                    System.err.println("Error looking up citizen: " + error.getMessage());
+                    showError("❌ Could not reach the database. Please try again.");
+                    return;
                 }
-            }
 
-            if (citizen != null) {
-                System.out.println("Found citizen: " + citizen.getName());
-                System.out.println("Stored phone: '" + citizen.getNumber() + "'");
-                System.out.println("Entered phone: '" + phonePassword + "'");
-                
-                // Check if the entered password matches the citizen's phone number
-                if (citizen.getNumber().trim().equals(phonePassword)) {
-                    showSuccess("✅ Welcome, " + citizen.getName() + "!");
-                    mainApp.showMainApp(false, citizen);
+                if (citizen != null) {
+                    System.out.println("Found citizen: " + citizen.getName());
+                    System.out.println("Stored phone: '" + citizen.getNumber() + "'");
+                    System.out.println("Entered phone: '" + phonePassword + "'");
+                    
+                    // Check if the entered password matches the citizen's phone number
+                    if (citizen.getNumber().trim().equals(phonePassword)) {
+                        showSuccess("✅ Welcome, " + citizen.getName() + "!");
+                        mainApp.showMainApp(false, citizen);
+                    } else {
+                        showError("❌ Invalid phone number for this email.\n\nExpected: " + citizen.getNumber() + "\nYou entered: " + phonePassword);
+                        passwordField.clear();
+                    }
                 } else {
-                    showError("❌ Invalid phone number for this email.\n\nExpected: " + citizen.getNumber() + "\nYou entered: " + phonePassword);
+                    showError("❌ Email not found in system.\n\nPlease check your email address.");
+                    usernameField.clear();
                     passwordField.clear();
                 }
-            } else {
-                showError("❌ Email not found in system.\n\nPlease check your email address.");
-                usernameField.clear();
-                passwordField.clear();
-            }
+            });
         }
     }
 
@@ -1,20 +1,37 @@
 package com.govagency.controller;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
-import org.json.JSONObject;
-
-import com.govagency.LocalDatabase;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.govagency.DataStore;
+import com.govagency.RecordChange;
 import com.govagency.model.Citizen;
 import com.govagency.model.Document;
 import com.govagency.model.ServiceRequest;
+import com.govagency.util.SortKey;
+import com.govagency.util.StatusQueue;
 import com.govagency.util.Validator;
 
+import javafx.animation.AnimationTimer;
+import javafx.animation.PauseTransition;
 import javafx.animation.ScaleTransition;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
@@ -25,6 +42,8 @@ import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Separator;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
@@ -41,9 +60,8 @@ import javafx.util.Duration;
 public class MainController {
 
     private final boolean isAdmin;
-    private final Citizen loggedInCitizen;
-    private final Map<String, Citizen> citizenMap;
-    private final LocalDatabase database;
+    private Citizen loggedInCitizen;
+    private final DataStore dataStore;
 
     // Citizens
     private TextField citizenNameField;
@@ -52,6 +70,11 @@ public class MainController {
     private TextField searchField;
     private TextField editDeleteCitizenField;
     private TextArea citizenInfoArea;
+    private TableView<Citizen> citizenTable;
+    private PagedList<Citizen> allCitizens;
+    private final PauseTransition searchDelay = new PauseTransition(Duration.millis(SEARCH_DELAY_MS));
+    // Numbers each search so an answer to an older query is dropped
+    private int searchSequence;
     private Button addCitizenButton;
     private Button editCitizenButton;
     private Button deleteCitizenButton;
@@ -62,25 +85,42 @@ public class MainController {
     private ComboBox<Document.Status> docStatusComboBox;
     private TextField docSearchCitizenIdField;
     private TextArea docStatusArea;
+    private TableView<Document> documentTable;
+    private PagedList<Document> allDocuments;
     private Button uploadDocButton;
     private Button checkDocButton;
     private Button searchDocByCitizenButton;
     private Button updateDocStatusButton;
+    private Button stalePendingDocsButton;
+    private Button pendingDocsQueueButton;
 
     // Service Requests
     private TextField reqCitizenIdField;
     private TextField reqServiceTypeField;
     private TextField reqSearchCitizenIdField;
+    private TextField reqSearchTextField;
     private ComboBox<ServiceRequest.Status> reqStatusComboBox;
     private TextArea reqStatusArea;
+    private TableView<ServiceRequest> requestTable;
+    private PagedList<ServiceRequest> allRequests;
     private Button addRequestButton;
     private Button showAllRequestsButton;
     private Button updateRequestStatusButton;
     private Button searchRequestsByCitizenButton;
-
-    private final List<Document> documents = new ArrayList<>();
-    private final List<ServiceRequest> serviceRequests = new ArrayList<>();
-    private int nextCitizenId = 1;
+    private Button searchRequestsByTextButton;
+    private Button thisWeekRequestsButton;
+    private Button requestQueueButton;
+
+
+    // Record changes waiting for the next pulse, so a burst of them redraws the tables once
+    private final List<RecordChange> pendingChanges = new ArrayList<>();
+    private final AnimationTimer changePulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            stop();
+            applyPendingChanges();
+        }
+    };
 
     // Colors
     private static final String DARK_BG = "#0d1117";
@@ -95,46 +135,26 @@ public class MainController {
     private static final String INPUT_BG = "#0d1117";
     private static final String BORDER_PURPLE = "#30363d";
 
-    public MainController(boolean isAdmin, Citizen citizen, Map<String, Citizen> citizenMap) {
-        this.isAdmin = isAdmin;
-        this.loggedInCitizen = citizen;
-        this.citizenMap = citizenMap;
-        this.database = new LocalDatabase();
-
-        for (JSONObject obj : database.getAllCitizens()) {
-            String id = obj.getString("id");
-            String name = obj.getString("name");
-            String email = obj.getString("email");
-            String number = obj.getString("number");
-
-            Citizen c = new Citizen(id, name, number, email);
-            this.citizenMap.put(id, c);
-
-            int numId = Integer.parseInt(id);
-            if (numId >= nextCitizenId) nextCitizenId = numId + 1;
-        }
+    // Rows fetched at a time by the "Show All" listings, and shown by the work queues and searches
+    private static final int PAGE_SIZE = 100;
 
-        for (JSONObject obj : database.getAllDocuments()) {
-            String id = obj.getString("id");
-            String citizenId = obj.getString("ownerId");
-            Document.Status status = Document.Status.valueOf(obj.getString("status"));
+    // Quiet time after a keystroke before searching, and matches shown
+    private static final int SEARCH_DELAY_MS = 150;
+    private static final int SEARCH_LIMIT = 50;
 
-            Document doc = new Document(id, citizenId);
-            doc.setStatus(status);
-            documents.add(doc);
-        }
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
 
-        for (JSONObject obj : database.getAllRequests()) {
-            String id = obj.getString("id");
-            String citizenId = obj.getString("citizenId");
-            String type = obj.getString("type");
-            String description = obj.optString("description", "");
-            ServiceRequest.Status status = ServiceRequest.Status.valueOf(obj.getString("status"));
+    // Age after which a pending document is listed as overdue
+    private static final int STALE_DOCUMENT_DAYS = 30;
 
-            ServiceRequest sr = new ServiceRequest(id, citizenId, type, description);
-            sr.setStatus(status);
-            serviceRequests.add(sr);
-        }
+    public MainController(boolean isAdmin, Citizen citizen, DataStore dataStore) {
+        this.isAdmin = isAdmin;
+        this.loggedInCitizen = citizen;
+        this.dataStore = dataStore;
+        this.allCitizens = new PagedList<>(dataStore::getCitizenPage, PAGE_SIZE, SortKey.ID);
+        this.allDocuments = new PagedList<>(dataStore::getDocumentPage, PAGE_SIZE, SortKey.DATE);
+        this.allRequests = new PagedList<>(dataStore::getRequestPage, PAGE_SIZE, SortKey.DATE);
+        dataStore.addChangeListener(this::queueChanges);
     }
 
     public Node getView() {
@@ -324,24 +344,20 @@ public class MainController {
             return;
         }
 
-        if (citizenMap.values().stream()
-                .anyMatch(c -> !c.getId().equals(loggedInCitizen.getId()) && c.getEmail().equalsIgnoreCase(newEmail))) {
-            showError("❌ Email already in use by another citizen.");
-            return;
-        }
-
         if (!isValidPhilippinePhoneNumber(newPhone)) {
             showError("❌ Invalid Philippine phone number.\nFormats: 09XXXXXXXXX | +639XXXXXXXXX");
             return;
         }
 
-        loggedInCitizen.setEmail(newEmail);
-        loggedInCitizen.setNumber(newPhone);
-        database.updateCitizen(loggedInCitizen.getId(), loggedInCitizen);
-
-        showSuccess("✅ Profile updated successfully!");
-        citizenEmailField.clear();
-        citizenNumberField.clear();
+        // Email uniqueness is enforced by the data layer
+        whenDone(dataStore.updateCitizen(loggedInCitizen.getId(), loggedInCitizen.getName(), newEmail, newPhone), updated -> {
+            if (updated != null) {
+                loggedInCitizen = updated;
+            }
+            showSuccess("✅ Profile updated successfully!");
+            citizenEmailField.clear();
+            citizenNumberField.clear();
+        });
     }
 
     // ==================== CITIZEN PANE (ADMIN ONLY) ====================
@@ -357,9 +373,11 @@ public class MainController {
         citizenInfoArea = new TextArea();
         citizenInfoArea.setEditable(false);
         citizenInfoArea.setWrapText(true);
-        citizenInfoArea.setPrefRowCount(10);
+        citizenInfoArea.setPrefRowCount(4);
         applyTextAreaStyle(citizenInfoArea);
-        VBox.setVgrow(citizenInfoArea, Priority.ALWAYS);
+
+        citizenTable = createCitizenTable();
+        VBox.setVgrow(citizenTable, Priority.ALWAYS);
 
         mainContent.getChildren().addAll(
             createTitleLabel("👥 Citizen Management"),
@@ -367,7 +385,8 @@ public class MainController {
             new Separator(),
             searchSection,
             new Separator(),
-            citizenInfoArea
+            citizenInfoArea,
+            citizenTable
         );
 
         ScrollPane scrollPane = new ScrollPane(mainContent);
@@ -436,7 +455,9 @@ public class MainController {
 
         Label sectionLabel = createSectionLabel("🔍 Search & Manage Citizens");
 
-        searchField = createStyledTextField("Search by ID");
+        searchField = createStyledTextField("Search by ID, name, email or phone");
+        searchDelay.setOnFinished(e -> searchCitizensMatching(searchField.getText().trim()));
+        searchField.textProperty().addListener((obs, oldText, newText) -> searchDelay.playFromStart());
         editDeleteCitizenField = createStyledTextField("Edit/Delete by ID");
 
         Button searchButton = createStyledButton("🔎 Search", ACCENT_CYAN);
@@ -467,7 +488,6 @@ public class MainController {
 
     private void addCitizen() {
         try {
-            String id = String.valueOf(nextCitizenId);
             String name = citizenNameField.getText().trim();
             String email = citizenEmailField.getText().trim();
             String number = citizenNumberField.getText().trim();
@@ -488,24 +508,22 @@ public class MainController {
                 showError("❌ Invalid Philippine phone number.\nFormats: 09XXXXXXXXX | +639XXXXXXXXX | +6309XXXXXXXXX");
                 return;
             }
-            if (citizenMap.containsKey(id)) {
+
+            String id = dataStore.allocateCitizenId();
+            if (dataStore.hasCitizen(id)) {
                 showError("❌ Citizen ID already exists.");
                 return;
             }
-            if (citizenMap.values().stream().anyMatch(c -> c.getEmail().equalsIgnoreCase(email))) {
-                showError("❌ Email already in use.");
-                return;
-            }
 
+            // Email uniqueness is enforced by the data layer
             Citizen citizen = new Citizen(id, name, number, email);
-            citizenMap.put(id, citizen);
-            database.addCitizen(citizen);
-            showSuccess("✅ Citizen added successfully:\n" + citizen);
+            whenDone(dataStore.addCitizen(citizen), ignored -> {
+                showSuccess("✅ Citizen added successfully:\n" + citizen);
 
-            nextCitizenId++;
-            citizenNameField.clear();
-            citizenEmailField.clear();
-            citizenNumberField.clear();
+                citizenNameField.clear();
+                citizenEmailField.clear();
+                citizenNumberField.clear();
+            });
 
         } catch (IllegalArgumentException ex) {
             showError("❌ " + ex.getMessage());
@@ -514,11 +532,11 @@ public class MainController {
 
     private void editCitizen() {
         String id = editDeleteCitizenField.getText().trim();
-        if (!citizenMap.containsKey(id)) {
+        Citizen citizen = dataStore.getCitizen(id);
+        if (citizen == null) {
             showError("❌ Citizen ID not found.");
             return;
         }
-        Citizen citizen = citizenMap.get(id);
         String newName = citizenNameField.getText().trim();
         String newEmail = citizenEmailField.getText().trim();
         String newNumber = citizenNumberField.getText().trim();
@@ -531,11 +549,6 @@ public class MainController {
             showError("❌ Invalid email format.");
             return;
         }
-        if (citizenMap.values().stream()
-                .anyMatch(c -> !c.getId().equals(id) && c.getEmail().equalsIgnoreCase(newEmail))) {
-            showError("❌ Email already in use by another citizen.");
-            return;
-        }
         if (!Validator.isValidCitizenName(newName)) {
             showError("❌ Invalid name. Only letters and spaces allowed.");
             return;
@@ -545,36 +558,35 @@ public class MainController {
             return;
         }
 
-        citizen.setName(newName);
-        citizen.setEmail(newEmail);
-        database.updateCitizen(id, citizen);
-        showSuccess("✅ Citizen updated:\n" + citizen);
+        whenDone(dataStore.updateCitizen(id, newName, newEmail, citizen.getNumber()),
+                updated -> showSuccess("✅ Citizen updated:\n" + updated));
     }
 
     private void deleteCitizen() {
         String id = editDeleteCitizenField.getText().trim();
-        if (!citizenMap.containsKey(id)) {
+        if (!dataStore.hasCitizen(id)) {
             showError("❌ Citizen ID not found.");
             return;
         }
 
-        database.deleteCitizen(id);
-        citizenMap.remove(id);
-
-        editDeleteCitizenField.clear();
-        citizenNameField.clear();
-        citizenEmailField.clear();
-        citizenNumberField.clear();
+        whenDone(dataStore.deleteCitizen(id), ignored -> {
+            editDeleteCitizenField.clear();
+            citizenNameField.clear();
+            citizenEmailField.clear();
+            citizenNumberField.clear();
 
-        showSuccess("✅ Citizen with ID " + id + " deleted successfully.");
+            showSuccess("✅ Citizen with ID " + id + " deleted successfully.");
+        });
     }
 
     private void searchCitizen() {
-        String id = searchField.getText().trim();
-        Citizen citizen = citizenMap.get(id);
+        searchDelay.stop();
+        String query = searchField.getText().trim();
+        Citizen citizen = dataStore.getCitizen(query);
         if (citizen == null) {
-            showError("❌ Citizen not found.");
+            searchCitizensMatching(query);
         } else {
+            searchSequence++;
             citizenInfoArea.setText(citizen.toString());
             citizenNameField.setText(citizen.getName());
             citizenEmailField.setText(citizen.getEmail());
@@ -582,18 +594,31 @@ public class MainController {
         }
     }
 
-    private void showAllCitizens() {
-        if (citizenMap.isEmpty()) {
-            citizenInfoArea.setText("No citizens found.");
+    /**
+     * List the citizens whose name, email or phone number contains {@code query}.
+     */
+    private void searchCitizensMatching(String query) {
+        int sequence = ++searchSequence;
+        if (query.isEmpty()) {
             return;
         }
-        StringBuilder sb = new StringBuilder("╔════════════════════════════════════════╗\n");
-        sb.append("║          📋 ALL CITIZENS               ║\n");
-        sb.append("╚════════════════════════════════════════╝\n\n");
-        for (Citizen citizen : citizenMap.values()) {
-            sb.append(citizen).append("\n\n");
-        }
-        citizenInfoArea.setText(sb.toString());
+        whenDone(dataStore.searchCitizens(query, SEARCH_LIMIT), found -> {
+            if (sequence != searchSequence) {
+                return;
+            }
+            showRows(citizenTable, found);
+            if (found.isEmpty()) {
+                citizenInfoArea.setText("No citizens match \"" + query + "\".");
+            } else {
+                citizenInfoArea.setText("🔍 " + (found.size() == SEARCH_LIMIT ? "First " : "") + found.size()
+                        + " citizens matching \"" + query + "\"");
+            }
+        });
+    }
+
+    private void showAllCitizens() {
+        whenDone(showPagedRows(citizenTable, allCitizens, SortKey.ID), total ->
+                citizenInfoArea.setText(total == 0 ? "No citizens found." : "📋 ALL CITIZENS (" + total + ")"));
     }
 
     // ==================== DOCUMENT PANE (ADMIN ONLY) ====================
@@ -609,9 +634,11 @@ public class MainController {
         docStatusArea = new TextArea();
         docStatusArea.setEditable(false);
         docStatusArea.setWrapText(true);
-        docStatusArea.setPrefRowCount(10);
+        docStatusArea.setPrefRowCount(4);
         applyTextAreaStyle(docStatusArea);
-        VBox.setVgrow(docStatusArea, Priority.ALWAYS);
+
+        documentTable = createDocumentTable();
+        VBox.setVgrow(documentTable, Priority.ALWAYS);
 
         mainContent.getChildren().addAll(
             createTitleLabel("📄 Document Tracking"),
@@ -619,7 +646,8 @@ public class MainController {
             new Separator(),
             searchSection,
             new Separator(),
-            docStatusArea
+            docStatusArea,
+            documentTable
         );
 
         ScrollPane scrollPane = new ScrollPane(mainContent);
@@ -704,9 +732,16 @@ public class MainController {
         checkDocButton = createStyledButton("👁️ Show All", PRIMARY_PURPLE);
         checkDocButton.setOnAction(e -> checkDocuments());
 
+        stalePendingDocsButton = createStyledButton("⏳ Pending " + STALE_DOCUMENT_DAYS + "+ Days", WARNING_ORANGE);
+        stalePendingDocsButton.setOnAction(e -> showStalePendingDocuments());
+
+        pendingDocsQueueButton = createStyledButton("📥 Pending Queue", SUCCESS_GREEN);
+        pendingDocsQueueButton.setOnAction(e -> showPendingDocumentQueue());
+
         HBox searchBox = new HBox(10);
         searchBox.setAlignment(Pos.CENTER_LEFT);
-        searchBox.getChildren().addAll(createLabel("Citizen ID:"), docSearchCitizenIdField, searchDocByCitizenButton, checkDocButton);
+        searchBox.getChildren().addAll(createLabel("Citizen ID:"), docSearchCitizenIdField, searchDocByCitizenButton, checkDocButton,
+                pendingDocsQueueButton, stalePendingDocsButton);
         HBox.setHgrow(docSearchCitizenIdField, Priority.ALWAYS);
 
         section.getChildren().addAll(sectionLabel, searchBox);
@@ -721,38 +756,53 @@ public class MainController {
             showError("❌ Citizen ID cannot be empty.");
             return;
         }
-        if (!citizenMap.containsKey(citizenId)) {
+        if (!dataStore.hasCitizen(citizenId)) {
             showError("❌ Citizen ID does not exist.");
             return;
         }
 
-        String docId = generateDocumentId(citizenId);
+        String docId = dataStore.allocateDocumentId(citizenId);
 
         Document doc = new Document(docId, citizenId);
         doc.setStatus(status);
-        documents.add(doc);
-        database.addDocument(doc);
-        showSuccess("✅ Document uploaded:\n" +
-                "ID: " + docId + "\n" +
-                "Citizen ID: " + citizenId + "\n" +
-                "Status: " + status);
-
-        docCitizenIdField.clear();
-        docStatusComboBox.setValue(Document.Status.PENDING);
+        whenDone(dataStore.addDocument(doc), ignored -> {
+            showSuccess("✅ Document uploaded:\n" +
+                    "ID: " + docId + "\n" +
+                    "Citizen ID: " + citizenId + "\n" +
+                    "Status: " + status);
+
+            docCitizenIdField.clear();
+            docStatusComboBox.setValue(Document.Status.PENDING);
+        });
     }
 
     private void checkDocuments() {
-        if (documents.isEmpty()) {
-            docStatusArea.setText("No documents found.");
-            return;
-        }
-        StringBuilder sb = new StringBuilder("╔════════════════════════════════════════╗\n");
-        sb.append("║          📄 ALL DOCUMENTS              ║\n");
-        sb.append("╚════════════════════════════════════════╝\n\n");
-        for (Document doc : documents) {
-            sb.append(doc).append("\n");
-        }
-        docStatusArea.setText(sb.toString());
+        whenDone(showPagedRows(documentTable, allDocuments, SortKey.DATE), total ->
+                docStatusArea.setText(total == 0 ? "No documents found." : "📄 ALL DOCUMENTS (" + total + ")"));
+    }
+
+    private void showPendingDocumentQueue() {
+        whenDone(dataStore.getDocumentQueue(Document.Status.PENDING, PAGE_SIZE), queue -> {
+            StringBuilder sb = new StringBuilder("📥 PENDING DOCUMENT QUEUE\n");
+            appendStatusCounts(sb, queue);
+            if (queue.isEmpty()) {
+                sb.append("No pending documents.");
+            }
+            docStatusArea.setText(sb.toString());
+            showRows(documentTable, queue.getItems());
+        });
+    }
+
+    private void showStalePendingDocuments() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(STALE_DOCUMENT_DAYS);
+        whenDone(dataStore.getDocumentsByStatusUploadedBefore(Document.Status.PENDING, cutoff), oldDocs -> {
+            if (oldDocs.isEmpty()) {
+                docStatusArea.setText("No documents pending longer than " + STALE_DOCUMENT_DAYS + " days.");
+            } else {
+                docStatusArea.setText("Pending longer than " + STALE_DOCUMENT_DAYS + " days (" + oldDocs.size() + ")");
+            }
+            showRows(documentTable, oldDocs);
+        });
     }
 
     private void searchDocumentsByCitizenId() {
@@ -763,23 +813,14 @@ public class MainController {
             return;
         }
 
-        List<Document> filteredDocs = new ArrayList<>();
-        for (Document doc : documents) {
-            if (doc.getCitizenId().equals(searchCitizenId)) {
-                filteredDocs.add(doc);
-            }
-        }
-
-        if (filteredDocs.isEmpty()) {
-            docStatusArea.setText("No documents found for Citizen ID: " + searchCitizenId);
-        } else {
-            StringBuilder sb = new StringBuilder("Documents for Citizen ID: " + searchCitizenId + "\n");
-            sb.append("╔════════════════════════════════════════╗\n\n");
-            for (Document doc : filteredDocs) {
-                sb.append(doc).append("\n");
+        whenDone(dataStore.getDocumentsByCitizen(searchCitizenId), filteredDocs -> {
+            if (filteredDocs.isEmpty()) {
+                docStatusArea.setText("No documents found for Citizen ID: " + searchCitizenId);
+            } else {
+                docStatusArea.setText("Documents for Citizen ID: " + searchCitizenId + " (" + filteredDocs.size() + ")");
             }
-            docStatusArea.setText(sb.toString());
-        }
+            showRows(documentTable, filteredDocs);
+        });
     }
 
     private void updateDocumentStatus() {
@@ -790,28 +831,24 @@ public class MainController {
             showError("❌ Please enter Citizen ID to update.");
             return;
         }
-        if (!citizenMap.containsKey(citizenId)) {
+        if (!dataStore.hasCitizen(citizenId)) {
             showError("❌ Citizen ID does not exist.");
             return;
         }
 
-        Document lastDoc = null;
-        for (Document doc : documents) {
-            if (doc.getCitizenId().equals(citizenId)) {
-                lastDoc = doc;
-            }
-        }
+        whenDone(dataStore.getDocumentsByCitizen(citizenId), citizenDocs -> {
+            Document lastDoc = citizenDocs.isEmpty() ? null : citizenDocs.get(citizenDocs.size() - 1);
 
-        if (lastDoc == null) {
-            showError("❌ No documents found for Citizen ID: " + citizenId);
-            return;
-        }
+            if (lastDoc == null) {
+                showError("❌ No documents found for Citizen ID: " + citizenId);
+                return;
+            }
 
-        lastDoc.setStatus(newStatus);
-        database.updateDocument(lastDoc.getId(), lastDoc);
-        showSuccess("✅ Document status updated:\n" +
-                "ID: " + lastDoc.getId() + "\n" +
-                "New Status: " + newStatus);
+            whenDone(dataStore.updateDocumentStatus(lastDoc, newStatus), ignored ->
+                    showSuccess("✅ Document status updated:\n" +
+                            "ID: " + lastDoc.getId() + "\n" +
+                            "New Status: " + newStatus));
+        });
     }
 
     // ==================== SERVICE REQUEST PANE ====================
@@ -827,9 +864,11 @@ public class MainController {
         reqStatusArea = new TextArea();
         reqStatusArea.setEditable(false);
         reqStatusArea.setWrapText(true);
-        reqStatusArea.setPrefRowCount(10);
+        reqStatusArea.setPrefRowCount(4);
         applyTextAreaStyle(reqStatusArea);
-        VBox.setVgrow(reqStatusArea, Priority.ALWAYS);
+
+        requestTable = createRequestTable();
+        VBox.setVgrow(requestTable, Priority.ALWAYS);
 
         mainContent.getChildren().addAll(
             createTitleLabel(isAdmin ? "⚙️ All Service Requests" : "⚙️ My Requests"),
@@ -837,7 +876,8 @@ public class MainController {
             new Separator(),
             searchSection,
             new Separator(),
-            reqStatusArea
+            reqStatusArea,
+            requestTable
         );
 
         ScrollPane scrollPane = new ScrollPane(mainContent);
@@ -951,13 +991,34 @@ public class MainController {
             showAllRequestsButton = createStyledButton("👁️ Show All", PRIMARY_PURPLE);
             showAllRequestsButton.setOnAction(e -> showAllRequests());
 
+            thisWeekRequestsButton = createStyledButton("📅 This Week", ACCENT_CYAN);
+            thisWeekRequestsButton.setOnAction(e -> showRequestsThisWeek());
+
+            requestQueueButton = createStyledButton("📥 Queue", SUCCESS_GREEN);
+            requestQueueButton.setOnAction(e -> showRequestQueue());
+
             searchBox.getChildren().addAll(
                 createLabel("Citizen ID:"),
                 reqSearchCitizenIdField,
                 searchRequestsByCitizenButton,
-                showAllRequestsButton
+                showAllRequestsButton,
+                requestQueueButton,
+                thisWeekRequestsButton
             );
             HBox.setHgrow(reqSearchCitizenIdField, Priority.ALWAYS);
+
+            reqSearchTextField = createStyledTextField("Words or \"a phrase\" in service type or description");
+            reqSearchTextField.setOnAction(e -> searchRequestsByText());
+            searchRequestsByTextButton = createStyledButton("🔎 Find", ACCENT_CYAN);
+            searchRequestsByTextButton.setOnAction(e -> searchRequestsByText());
+
+            HBox textBox = new HBox(10);
+            textBox.setAlignment(Pos.CENTER_LEFT);
+            textBox.getChildren().addAll(createLabel("Text:"), reqSearchTextField, searchRequestsByTextButton);
+            HBox.setHgrow(reqSearchTextField, Priority.ALWAYS);
+
+            section.getChildren().addAll(sectionLabel, searchBox, textBox);
+            return section;
         }
 
         section.getChildren().addAll(sectionLabel, searchBox);
@@ -980,7 +1041,7 @@ private void addServiceRequest() {
                 showError("❌ Citizen ID cannot be empty.");
                 return;
             }
-            if (!citizenMap.containsKey(citizenId)) {
+            if (!dataStore.hasCitizen(citizenId)) {
                 showError("❌ Citizen ID does not exist.");
                 return;
             }
@@ -998,40 +1059,29 @@ private void addServiceRequest() {
             return;
         }
 
-        // Check for duplicate service type in pending requests
-        for (ServiceRequest sr : serviceRequests) {
-            if (sr.getCitizenId().equals(citizenId) && 
-                sr.getServiceType().equalsIgnoreCase(serviceType) &&
-                (sr.getStatus() == ServiceRequest.Status.REQUESTED || 
-                 sr.getStatus() == ServiceRequest.Status.PROCESSING)) {
-                showError("❌ You already have a pending request for: " + serviceType + 
-                         "\n\nPlease wait for it to be processed or contact an administrator.");
-                return;
-            }
-        }
-
-        String reqId = generateRequestId(citizenId);
+        String reqId = dataStore.allocateRequestId(citizenId);
 
         ServiceRequest sr = new ServiceRequest(reqId, citizenId, serviceType, description);
         sr.setStatus(status);
-        serviceRequests.add(sr);
-        database.addRequest(sr);
-        showSuccess("✅ Service request submitted:\n" +
-                "ID: " + reqId + "\n" +
-                "Service: " + serviceType + "\n" +
-                "Description: " + description + "\n" +
-                "Status: REQUESTED");
-
-        if (isAdmin) {
-            reqCitizenIdField.clear();
-        }
-        reqServiceTypeField.clear();
-        
-        // Clear description area
-        Node descNode2 = getDescriptionTextArea();
-        if (descNode2 instanceof TextArea) {
-            ((TextArea) descNode2).clear();
-        }
+        // The database rejects a second pending request for the same service
+        whenDone(dataStore.addRequest(sr), ignored -> {
+            showSuccess("✅ Service request submitted:\n" +
+                    "ID: " + reqId + "\n" +
+                    "Service: " + serviceType + "\n" +
+                    "Description: " + description + "\n" +
+                    "Status: REQUESTED");
+
+            if (isAdmin) {
+                reqCitizenIdField.clear();
+            }
+            reqServiceTypeField.clear();
+            
+            // Clear description area
+            Node descNode2 = getDescriptionTextArea();
+            if (descNode2 instanceof TextArea) {
+                ((TextArea) descNode2).clear();
+            }
+        });
     }
 
     private Node getDescriptionTextArea() {
@@ -1042,43 +1092,49 @@ private void addServiceRequest() {
     }
 
     private void showMyRequests() {
-        List<ServiceRequest> myRequests = new ArrayList<>();
-        for (ServiceRequest sr : serviceRequests) {
-            if (sr.getCitizenId().equals(loggedInCitizen.getId())) {
-                myRequests.add(sr);
+        whenDone(dataStore.getRequestsByCitizen(loggedInCitizen.getId()), myRequests -> {
+            if (myRequests.isEmpty()) {
+                reqStatusArea.setText("You have not submitted any service requests yet.");
+            } else {
+                reqStatusArea.setText("MY SERVICE REQUESTS (" + myRequests.size() + ")");
             }
-        }
+            showRows(requestTable, myRequests);
+        });
+    }
 
-        if (myRequests.isEmpty()) {
-            reqStatusArea.setText("You have not submitted any service requests yet.");
-            return;
-        }
+    private void showAllRequests() {
+        whenDone(showPagedRows(requestTable, allRequests, SortKey.DATE), total ->
+                reqStatusArea.setText(total == 0 ? "No service requests found." : "⚙️ ALL SERVICE REQUESTS (" + total + ")"));
+    }
 
-        StringBuilder sb = new StringBuilder("╔════════════════════════════════════════╗\n");
-        sb.append("║           MY SERVICE REQUESTS          ║\n");
-        sb.append("╚════════════════════════════════════════╝\n\n");
-        for (ServiceRequest sr : myRequests) {
-            sb.append("ID: ").append(sr.getId()).append("\n");
-            sb.append("Service: ").append(sr.getServiceType()).append("\n");
-            sb.append("Description: ").append(sr.getDescription()).append("\n");
-            sb.append("Status: ").append(sr.getStatus()).append("\n");
-            sb.append("─────────────────────────────────────\n\n");
-        }
-        reqStatusArea.setText(sb.toString());
+    private void showRequestQueue() {
+        whenDone(dataStore.getRequestQueue(ServiceRequest.Status.REQUESTED, PAGE_SIZE), queue -> {
+            StringBuilder sb = new StringBuilder("📥 NEW SERVICE REQUESTS\n");
+            appendStatusCounts(sb, queue);
+            if (queue.isEmpty()) {
+                sb.append("No new service requests.");
+            }
+            reqStatusArea.setText(sb.toString());
+            showRows(requestTable, queue.getItems());
+        });
     }
 
-    private void showAllRequests() {
-        if (serviceRequests.isEmpty()) {
-            reqStatusArea.setText("No service requests found.");
-            return;
-        }
-        StringBuilder sb = new StringBuilder("╔════════════════════════════════════════╗\n");
-        sb.append("║       ⚙️ ALL SERVICE REQUESTS          ║\n");
-        sb.append("╚════════════════════════════════════════╝\n\n");
-        for (ServiceRequest sr : serviceRequests) {
-            sb.append(sr).append("\n");
-        }
-        reqStatusArea.setText(sb.toString());
+    private static void appendStatusCounts(StringBuilder sb, StatusQueue<?, ?> queue) {
+        queue.getCounts().forEach((status, count) -> sb.append(status).append(": ").append(count).append("   "));
+        sb.append("\n");
+    }
+
+    private void showRequestsThisWeek() {
+        LocalDate monday = LocalDate.now().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        long from = monday.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        whenDone(dataStore.getRequestsSubmittedBetween(from, Long.MAX_VALUE), weekRequests -> {
+            if (weekRequests.isEmpty()) {
+                reqStatusArea.setText("No service requests filed this week.");
+            } else {
+                reqStatusArea.setText("Requests filed since " + monday + " (" + weekRequests.size() + ")");
+            }
+            showRows(requestTable, weekRequests);
+        });
     }
 
     private void updateRequestStatus() {
@@ -1090,23 +1146,19 @@ private void addServiceRequest() {
             return;
         }
 
-        ServiceRequest lastReq = null;
-        for (ServiceRequest sr : serviceRequests) {
-            if (sr.getCitizenId().equals(citizenId)) {
-                lastReq = sr;
-            }
-        }
+        whenDone(dataStore.getRequestsByCitizen(citizenId), citizenRequests -> {
+            ServiceRequest lastReq = citizenRequests.isEmpty() ? null : citizenRequests.get(citizenRequests.size() - 1);
 
-        if (lastReq == null) {
-            showError("❌ No service requests found for Citizen ID: " + citizenId);
-            return;
-        }
+            if (lastReq == null) {
+                showError("❌ No service requests found for Citizen ID: " + citizenId);
+                return;
+            }
 
-        lastReq.setStatus(newStatus);
-        database.updateRequest(lastReq.getId(), lastReq);
-        showSuccess("✅ Request status updated:\n" +
-                "ID: " + lastReq.getId() + "\n" +
-                "New Status: " + newStatus);
+            whenDone(dataStore.updateRequestStatus(lastReq, newStatus), ignored ->
+                    showSuccess("✅ Request status updated:\n" +
+                            "ID: " + lastReq.getId() + "\n" +
+                            "New Status: " + newStatus));
+        });
     }
 
     private void searchRequestsByCitizenId() {
@@ -1117,39 +1169,187 @@ private void addServiceRequest() {
             return;
         }
 
-        List<ServiceRequest> filteredRequests = new ArrayList<>();
-        for (ServiceRequest sr : serviceRequests) {
-            if (sr.getCitizenId().equals(searchCitizenId)) {
-                filteredRequests.add(sr);
+        whenDone(dataStore.getRequestsByCitizen(searchCitizenId), filteredRequests -> {
+            if (filteredRequests.isEmpty()) {
+                reqStatusArea.setText("No service requests found for Citizen ID: " + searchCitizenId);
+            } else {
+                reqStatusArea.setText("Service Requests for Citizen ID: " + searchCitizenId + " (" + filteredRequests.size() + ")");
             }
+            showRows(requestTable, filteredRequests);
+        });
+    }
+
+    private void searchRequestsByText() {
+        String query = reqSearchTextField.getText().trim();
+
+        if (query.isEmpty()) {
+            showError("❌ Please enter words to search for.");
+            return;
         }
 
-        if (filteredRequests.isEmpty()) {
-            reqStatusArea.setText("No service requests found for Citizen ID: " + searchCitizenId);
-        } else {
-            StringBuilder sb = new StringBuilder("Service Requests for Citizen ID: " + searchCitizenId + "\n");
-            sb.append("╔════════════════════════════════════════╗\n\n");
-            for (ServiceRequest sr : filteredRequests) {
-                sb.append(sr).append("\n");
+        whenDone(dataStore.searchRequests(query, PAGE_SIZE), found -> {
+            if (found.isEmpty()) {
+                reqStatusArea.setText("No service requests match: " + query);
+            } else {
+                reqStatusArea.setText("Service requests matching: " + query + " ("
+                        + (found.size() == PAGE_SIZE ? "best " : "") + found.size() + ")");
             }
-            reqStatusArea.setText(sb.toString());
-        }
+            showRows(requestTable, found);
+        });
+    }
+
+    // ==================== TABLES ====================
+
+    private TableView<Citizen> createCitizenTable() {
+        TableView<Citizen> table = new TableView<>();
+        table.getColumns().add(column("ID", Citizen::getId, SortKey.ID));
+        table.getColumns().add(column("Name", Citizen::getName, null));
+        table.getColumns().add(column("Email", Citizen::getEmail, null));
+        table.getColumns().add(column("Phone", Citizen::getNumber, null));
+        applyTableStyle(table);
+        sortPagedRowsOnServer(table, SortKey.ID);
+        return table;
+    }
+
+    private TableView<Document> createDocumentTable() {
+        TableView<Document> table = new TableView<>();
+        table.getColumns().add(column("Document ID", Document::getId, SortKey.ID));
+        table.getColumns().add(column("Citizen ID", Document::getCitizenId, SortKey.CITIZEN));
+        table.getColumns().add(column("Status", doc -> doc.getStatus().toString(), SortKey.STATUS));
+        table.getColumns().add(column("Uploaded", doc -> formatDate(doc.getUploadTime()), SortKey.DATE));
+        applyTableStyle(table);
+        sortPagedRowsOnServer(table, SortKey.DATE);
+        return table;
     }
 
-    // ==================== AUTO-GENERATE IDS ====================
+    private TableView<ServiceRequest> createRequestTable() {
+        TableView<ServiceRequest> table = new TableView<>();
+        table.getColumns().add(column("Request ID", ServiceRequest::getId, SortKey.ID));
+        table.getColumns().add(column("Citizen ID", ServiceRequest::getCitizenId, SortKey.CITIZEN));
+        table.getColumns().add(column("Service", ServiceRequest::getServiceType, null));
+        table.getColumns().add(column("Description", ServiceRequest::getDescription, null));
+        table.getColumns().add(column("Status", sr -> sr.getStatus().toString(), SortKey.STATUS));
+        table.getColumns().add(column("Submitted", sr -> formatDate(sr.getDate()), SortKey.DATE));
+        applyTableStyle(table);
+        sortPagedRowsOnServer(table, SortKey.DATE);
+        return table;
+    }
 
-    private String generateDocumentId(String citizenId) {
-        LocalDateTime now = LocalDateTime.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMddyy-HHmm-ss");
-        String timestamp = now.format(formatter);
-        return "DOC-" + citizenId + "-" + timestamp;
+    /**
+     * Text column; rows of a {@link PagedList} that are still loading are null and show blank.
+     * @param sortKey order the data layer sorts this column in, or null if only short lists can sort by it
+     */
+    private static <T> TableColumn<T, String> column(String title, Function<T, String> value, SortKey sortKey) {
+        TableColumn<T, String> column = new TableColumn<>(title);
+        column.setCellValueFactory(cell ->
+                new ReadOnlyStringWrapper(cell.getValue() == null ? "" : value.apply(cell.getValue())));
+        column.setUserData(sortKey);
+        return column;
     }
 
-    private String generateRequestId(String citizenId) {
-        LocalDateTime now = LocalDateTime.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMddyy-HHmm-ss");
-        String timestamp = now.format(formatter);
-        return "REQ-" + citizenId + "-" + timestamp;
+    /**
+     * Clicking a column header of a table showing a {@link PagedList} asks the data
+     * layer for the rows in that order instead of sorting the loaded rows. Columns
+     * without a sort key refuse. Other lists are short and sort in memory.
+     */
+    private static <T> void sortPagedRowsOnServer(TableView<T> table, SortKey defaultKey) {
+        table.setSortPolicy(t -> {
+            if (!(t.getItems() instanceof PagedList)) {
+                return TableView.DEFAULT_SORT_POLICY.call(t);
+            }
+            PagedList<T> rows = (PagedList<T>) t.getItems();
+            if (t.getSortOrder().isEmpty()) {
+                rows.sortBy(defaultKey, false);
+                return true;
+            }
+            TableColumn<T, ?> column = t.getSortOrder().get(0);
+            if (!(column.getUserData() instanceof SortKey)) {
+                return false;
+            }
+            rows.sortBy((SortKey) column.getUserData(), column.getSortType() == TableColumn.SortType.DESCENDING);
+            return true;
+        });
+    }
+
+    private static <T> void showRows(TableView<T> table, Collection<T> rows) {
+        table.setItems(FXCollections.observableArrayList(rows));
+        table.getSortOrder().clear();
+        table.scrollTo(0);
+    }
+
+    /**
+     * Show a listing from its first page in default order.
+     * @return completes with the number of rows once the first page is in
+     */
+    private static <T> CompletableFuture<Integer> showPagedRows(TableView<T> table, PagedList<T> rows, SortKey defaultKey) {
+        table.setItems(rows);
+        table.getSortOrder().clear();
+        table.scrollTo(0);
+        return rows.sortBy(defaultKey, false);
+    }
+
+    // ==================== LIVE UPDATES ====================
+
+    private void queueChanges(List<RecordChange> changes) {
+        pendingChanges.addAll(changes);
+        changePulse.start();
+    }
+
+    private void applyPendingChanges() {
+        List<RecordChange> changes = new ArrayList<>(pendingChanges);
+        pendingChanges.clear();
+        applyChanges(citizenTable, changes, Citizen.class, Citizen::getId, dataStore::getCitizen);
+        applyChanges(documentTable, changes, Document.class, Document::getId, dataStore::getCachedDocument);
+        applyChanges(requestTable, changes, ServiceRequest.class, ServiceRequest::getId, dataStore::getCachedRequest);
+    }
+
+    /**
+     * Show changed records in a table. Updated rows are swapped for the cached
+     * objects, which hold the change. A "Show All" listing fetches its loaded
+     * pages again only if rows may have moved; any other listing drops removed
+     * rows. New records only appear in "Show All" listings, since a search or
+     * queue would have to run again to tell whether they belong in it.
+     */
+    private static <T> void applyChanges(TableView<T> table, List<RecordChange> changes, Class<T> type,
+                                         Function<T, String> idOf, Function<String, T> cached) {
+        if (table == null) return;
+        // The last change of each record decides
+        Map<String, RecordChange.Type> latest = new HashMap<>();
+        for (RecordChange change : changes) {
+            if (change.getRecordType() == type) {
+                latest.put(change.getId(), change.getType());
+            }
+        }
+        if (latest.isEmpty()) return;
+
+        ObservableList<T> items = table.getItems();
+        if (items instanceof PagedList) {
+            PagedList<T> rows = (PagedList<T>) items;
+            // Updates never change ids, owners or dates, only a document's or
+            // request's status, so rows only move when records come or go or by status
+            boolean moved = latest.containsValue(RecordChange.Type.ADDED) || latest.containsValue(RecordChange.Type.REMOVED)
+                    || (type != Citizen.class && rows.getSort() == SortKey.STATUS);
+            rows.reload(row -> {
+                String id = idOf.apply(row);
+                return latest.get(id) == RecordChange.Type.UPDATED ? cached.apply(id) : row;
+            }, moved);
+            return;
+        }
+        for (int i = items.size() - 1; i >= 0; i--) {
+            T row = items.get(i);
+            RecordChange.Type change = latest.get(idOf.apply(row));
+            if (change == RecordChange.Type.REMOVED) {
+                items.remove(i);
+            } else if (change == RecordChange.Type.UPDATED) {
+                // Replacing the row redraws just that row; an uncached one is redrawn as it was
+                T current = cached.apply(idOf.apply(row));
+                items.set(i, current != null ? current : row);
+            }
+        }
+    }
+
+    private static String formatDate(LocalDateTime date) {
+        return date == null ? "" : date.format(DATE_FORMAT);
     }
 
     // ==================== VALIDATION ====================
@@ -1370,6 +1570,27 @@ private void addServiceRequest() {
         textArea.setWrapText(true);
     }
 
+    private void applyTableStyle(TableView<?> table) {
+        table.setStyle(
+            "-fx-font-size: 11;" +
+            "-fx-font-family: 'Segoe UI';" +
+            "-fx-border-color: " + ACCENT_CYAN + ";" +
+            "-fx-border-radius: 4;" +
+            "-fx-border-width: 1;" +
+            "-fx-background-color: " + INPUT_BG + ";" +
+            "-fx-control-inner-background: " + INPUT_BG + ";" +
+            "-fx-control-inner-background-alt: " + CARD_BG + ";" +
+            "-fx-text-background-color: " + TEXT_WHITE + ";" +
+            "-fx-table-cell-border-color: " + BORDER_PURPLE + ";"
+        );
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+        table.setPlaceholder(createLabel("Nothing to show yet."));
+        // Equal row heights let the table place rows without measuring them
+        table.setFixedCellSize(26);
+        table.setPrefHeight(400);
+        table.setMinHeight(200);
+    }
+
     private Label createTitleLabel(String text) {
         Label label = new Label(text);
         label.setFont(Font.font("Segoe UI", FontWeight.BOLD, 22));
@@ -1406,6 +1627,23 @@ private void addServiceRequest() {
         citizenInfoArea.setText(message);
     }
 
+    /**
+     * Run {@code onSuccess} on the FX thread once the data layer finished, or show its error.
+     */
+    private <T> void whenDone(CompletableFuture<T> future, Consumer<T> onSuccess) {
+        future.whenComplete((result, error) -> {
+            if (error == null) {
+                onSuccess.accept(result);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (!(cause instanceof IllegalArgumentException)) {
+                System.err.println("Database operation failed: " + cause);
+            }
+            showError("❌ " + cause.getMessage());
+        });
+    }
+
     private void showError(String message) {
         citizenInfoArea.setStyle(
             "-fx-font-size: 11;" +
@@ -0,0 +1,213 @@
+package com.govagency.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import com.govagency.util.LruCache;
+import com.govagency.util.Page;
+import com.govagency.util.SortKey;
+
+import javafx.collections.ObservableListBase;
+
+/**
+ * Read-only list over a large result that is fetched one page at a time.
+ *
+ * <p>The list reports the size of the whole result, but only holds the pages
+ * a {@code TableView} or {@code ListView} has asked for lately. Reading a row
+ * whose page is not loaded yet returns null and fetches that page; the rows
+ * are replaced once it arrives. Sorting is left to the data layer, which
+ * reads each page from an index in the requested order. After records
+ * change, {@link #reload} swaps in updated rows it is handed and fetches
+ * pages again only when rows may have moved, announcing only the rows that
+ * differ. The list belongs to
+ * the FX thread, and the loader's futures must complete there, as
+ * {@link com.govagency.DataStore}'s do.
+ */
+public class PagedList<T> extends ObservableListBase<T> {
+
+    /**
+     * Fetches up to {@code limit} rows starting at {@code offset}, with the total.
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        CompletableFuture<Page<T>> load(int offset, int limit, SortKey sort, boolean descending);
+    }
+
+    // Pages kept per list; a screen of rows needs one or two
+    private static final int MAX_PAGES = 50;
+
+    private final Loader<T> loader;
+    private final int pageSize;
+    private SortKey sort;
+    private boolean descending;
+    private final Map<Integer, List<T>> pages = new LruCache<>(MAX_PAGES);
+    private final Set<Integer> loading = new HashSet<>();
+    // Pages whose request in flight may predate a change, fetched again when it returns
+    private final Set<Integer> stale = new HashSet<>();
+    private int size;
+    // Bumped on refresh so pages requested before it are dropped
+    private int generation;
+
+    public PagedList(Loader<T> loader, int pageSize, SortKey sort) {
+        this.loader = loader;
+        this.pageSize = pageSize;
+        this.sort = sort;
+    }
+
+    public SortKey getSort() {
+        return sort;
+    }
+
+    /**
+     * Reload the list in a new order.
+     */
+    public CompletableFuture<Integer> sortBy(SortKey sort, boolean descending) {
+        this.sort = sort;
+        this.descending = descending;
+        return refresh();
+    }
+
+    /**
+     * Forget every loaded page and fetch the first one again.
+     * @return completes with the new total once the first page is in
+     */
+    public CompletableFuture<Integer> refresh() {
+        generation++;
+        pages.clear();
+        loading.clear();
+        stale.clear();
+        return load(0, true).thenApply(page -> size);
+    }
+
+    /**
+     * Bring the loaded rows up to date after records changed. {@code current}
+     * maps each loaded row to its up-to-date object: the row itself if it did
+     * not change, or null if its new state is not at hand, in which case its
+     * page is fetched again. Replaced rows are announced as set. With
+     * {@code refetch}, for records added, removed or moved in the sort order,
+     * every loaded page is fetched again and only the rows that moved, and
+     * the tail if the total changed, are announced.
+     */
+    public void reload(Function<? super T, ? extends T> current, boolean refetch) {
+        // Sorted, as a change lists its parts in order
+        NavigableMap<Integer, T> replaced = new TreeMap<>();
+        Set<Integer> outdated = new HashSet<>();
+        for (Map.Entry<Integer, List<T>> page : pages.entrySet()) {
+            List<T> rows = page.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                int index = page.getKey() * pageSize + i;
+                T row = rows.get(i);
+                if (index >= size || row == null) continue;
+
+                T next = current.apply(row);
+                if (next == null) {
+                    outdated.add(page.getKey());
+                } else if (next != row) {
+                    rows.set(i, next);
+                    replaced.put(index, row);
+                }
+            }
+        }
+        beginChange();
+        for (Map.Entry<Integer, T> row : replaced.entrySet()) {
+            nextSet(row.getKey(), row.getValue());
+        }
+        endChange();
+
+        for (int pageIndex : new ArrayList<>(refetch ? pages.keySet() : outdated)) {
+            if (loading.contains(pageIndex)) {
+                stale.add(pageIndex);
+            } else {
+                load(pageIndex, false);
+            }
+        }
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+        int pageIndex = index / pageSize;
+        List<T> rows = pages.get(pageIndex);
+        if (rows == null) {
+            load(pageIndex, false);
+            return null;
+        }
+        int row = index - pageIndex * pageSize;
+        return row < rows.size() ? rows.get(row) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param replaceAll announce every row as changed, not just this page's
+     */
+    private CompletableFuture<Page<T>> load(int pageIndex, boolean replaceAll) {
+        if (!loading.add(pageIndex)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int requested = generation;
+        return loader.load(pageIndex * pageSize, pageSize, sort, descending).whenComplete((page, error) -> {
+            if (requested != generation) {
+                return;
+            }
+            loading.remove(pageIndex);
+            if (error != null) {
+                System.err.println("Error loading rows: " + error.getMessage());
+                return;
+            }
+            // Copied, as reload replaces rows in place
+            List<T> rows = new ArrayList<>(page.getItems());
+            List<T> old = pages.put(pageIndex, rows);
+            int oldSize = size;
+            beginChange();
+            if (replaceAll) {
+                pages.keySet().retainAll(Collections.singleton(pageIndex));
+                size = page.getTotal();
+                if (size > 0 || oldSize > 0) {
+                    nextReplace(0, size, Collections.nCopies(oldSize, null));
+                }
+            } else {
+                // Announce the rows of this page that differ, then the change in length
+                size = page.getTotal();
+                int from = pageIndex * pageSize;
+                int shared = Math.min(oldSize, size);
+                for (int i = 0; i < rows.size() && from + i < shared; i++) {
+                    T before = old != null && i < old.size() ? old.get(i) : null;
+                    if (rows.get(i) != before) {
+                        nextSet(from + i, before);
+                    }
+                }
+                if (size > oldSize) {
+                    nextAdd(oldSize, size);
+                } else if (size < oldSize) {
+                    nextRemove(size, Collections.nCopies(oldSize - size, null));
+                }
+            }
+            endChange();
+
+            if (stale.remove(pageIndex)) {
+                load(pageIndex, false);
+            } else if (!replaceAll && size != oldSize) {
+                // Records were added or removed meanwhile, so the other pages may have shifted
+                for (int other : new ArrayList<>(pages.keySet())) {
+                    if (other != pageIndex && !loading.contains(other)) {
+                        load(other, false);
+                    }
+                }
+            }
+        });
+    }
+}
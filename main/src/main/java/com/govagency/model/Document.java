@@ -1,6 +1,8 @@
 package com.govagency.model;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 
@@ -13,14 +15,21 @@ public class Document {
     private String documentId;
     private String citizenId;
     private Status status;
-    private LocalDateTime uploadTime;
+    // Epoch milliseconds
+    private long uploadTime;
 
     public Document(String documentId, String citizenId) {
+        this(documentId, citizenId, System.currentTimeMillis());
+    }
+
+    /**
+     * @param uploadTime upload time in epoch milliseconds
+     */
+    public Document(String documentId, String citizenId, long uploadTime) {
         this.documentId = documentId;
         this.citizenId = citizenId;
         this.status = Status.PENDING;
-        this.uploadTime = LocalDateTime.now();
-        
+        this.uploadTime = uploadTime;
     }
 
     public String getId() {
@@ -32,6 +41,10 @@ public class Document {
     }
 
     public LocalDateTime getUploadTime() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(uploadTime), ZoneId.systemDefault());
+    }
+
+    public long getUploadTimeMillis() {
         return uploadTime;
     }
     public Status getStatus() {
@@ -45,7 +58,7 @@ public class Document {
     public String toString() {
         return "Document ID: " + documentId +
                 ", Citizen ID: " + citizenId +
-                ", Uploaded at: " + uploadTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+                ", Uploaded at: " + getUploadTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
                 ) +", Status: " + (status != null ? status : "Not Reviewed");
     }
 }
\ No newline at end of file
@@ -1,21 +1,42 @@
 package com.govagency.model;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
 public class ServiceRequest {
     public enum Status {
-        REQUESTED, PROCESSING, COMPLETED, REJECTED
+        REQUESTED, PROCESSING, COMPLETED, REJECTED;
+
+        /**
+         * True while the request still waits for the agency.
+         */
+        public boolean isOpen() {
+            return this == REQUESTED || this == PROCESSING;
+        }
     }
 
     private final String id;
     private final String citizenId;
     private final String serviceType;
     private final String description;
+    // Epoch milliseconds
+    private final long date;
     private Status status;
 
     public ServiceRequest(String id, String citizenId, String serviceType, String description) {
+        this(id, citizenId, serviceType, description, System.currentTimeMillis());
+    }
+
+    /**
+     * @param date when the request was submitted, in epoch milliseconds
+     */
+    public ServiceRequest(String id, String citizenId, String serviceType, String description, long date) {
         this.id = id;
         this.citizenId = citizenId;
         this.serviceType = serviceType;
         this.description = description;
+        this.date = date;
         this.status = Status.REQUESTED;
     }
 
@@ -35,6 +56,14 @@ public class ServiceRequest {
         return description;
     }
 
+    public LocalDateTime getDate() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(date), ZoneId.systemDefault());
+    }
+
+    public long getDateMillis() {
+        return date;
+    }
+
     public Status getStatus() {
         return status;
     }
@@ -0,0 +1,105 @@
+package com.govagency.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replaces a file so that readers see either the old or the new contents,
+ * never a partial write: data goes to a temp file, is forced to disk and then
+ * renamed over the target. Older versions are kept as {@code name.1 .. name.N}.
+ */
+public class AtomicFile {
+
+    /**
+     * Produces the new file contents.
+     */
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private final Path path;
+    private final int backupGenerations;
+    private final StorageStats stats;
+
+    public AtomicFile(Path path, int backupGenerations, StorageStats stats) {
+        this.path = path.toAbsolutePath();
+        this.backupGenerations = backupGenerations;
+        this.stats = stats;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @param generation 1 for the most recent backup
+     */
+    public Path backup(int generation) {
+        return path.resolveSibling(path.getFileName() + "." + generation);
+    }
+
+    public int getBackupGenerations() {
+        return backupGenerations;
+    }
+
+    public void write(Content content) throws IOException {
+        long start = System.nanoTime();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Not closed here: closing the stream would close the channel before force()
+            OutputStream out = Channels.newOutputStream(channel);
+            content.writeTo(out);
+            out.flush();
+
+            long syncStart = System.nanoTime();
+            channel.force(true);
+            stats.recordSync(System.nanoTime() - syncStart);
+        }
+
+        rotateBackups();
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(path.getParent());
+        stats.recordSnapshot(System.nanoTime() - start);
+    }
+
+    /**
+     * Force a directory's entries to disk, so a rename in it survives a crash.
+     * Callers must do this before dropping anything the renamed file replaces.
+     */
+    public static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows cannot open a directory; NTFS journals the rename itself
+        }
+    }
+
+    // The live file stays in place while it is linked (or copied) into generation 1
+    private void rotateBackups() throws IOException {
+        if (backupGenerations <= 0 || !Files.exists(path)) return;
+
+        for (int generation = backupGenerations; generation > 1; generation--) {
+            Path older = backup(generation - 1);
+            if (Files.exists(older)) {
+                Files.move(older, backup(generation), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        Path newest = backup(1);
+        Files.deleteIfExists(newest);
+        try {
+            Files.createLink(newest, path);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(path, newest, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
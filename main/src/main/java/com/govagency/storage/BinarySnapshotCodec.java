@@ -0,0 +1,295 @@
+package com.govagency.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Compact binary snapshot format.
+ *
+ * <pre>
+ * file   := MAGIC version:u8 tableCount:varint table*
+ * table  := name:string recordCount:varint record*
+ * record := fieldCount:varint (name:symbol value)*
+ * string := byteLength:varint utf8Bytes
+ * symbol := 0 string        first use, assigns the next symbol number
+ *         | n:varint        n - 1 is the number of an earlier symbol
+ * </pre>
+ *
+ * Field names and the values of {@link #SYMBOL_FIELDS} (status, service type)
+ * repeat across records, so they are written once and referenced afterwards.
+ * Each value starts with a type tag; nested objects and arrays, which the
+ * schema does not use, are kept as JSON text so nothing is lost.
+ */
+public class BinarySnapshotCodec implements SnapshotCodec {
+
+    /** "GADB" */
+    public static final int MAGIC = 0x47414442;
+    private static final int VERSION = 1;
+
+    // Strings longer than this are read piecewise
+    private static final int STRING_CHUNK = 1 << 16;
+
+    private static final Set<String> SYMBOL_FIELDS = Set.of("status", "type");
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_DOUBLE = 4;
+    private static final int TAG_NUMBER = 5;
+    private static final int TAG_STRING = 6;
+    private static final int TAG_SYMBOL = 7;
+    private static final int TAG_OBJECT = 8;
+    private static final int TAG_ARRAY = 9;
+
+    @Override
+    public int read(InputStream in, BiConsumer<String, JSONObject> sink) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a binary snapshot");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary snapshot version " + version);
+        }
+
+        List<String> symbols = new ArrayList<>();
+        int count = 0;
+        try {
+            int tableCount = readVarInt(data);
+            for (int t = 0; t < tableCount; t++) {
+                String table = readString(data);
+                int recordCount = readVarInt(data);
+                for (int r = 0; r < recordCount; r++) {
+                    sink.accept(table, readRecord(data, symbols));
+                    count++;
+                }
+            }
+        } catch (JSONException | IndexOutOfBoundsException | NumberFormatException e) {
+            throw new IOException("Corrupt binary snapshot: " + e.getMessage(), e);
+        }
+        return count;
+    }
+
+    @Override
+    public void write(Map<String, ? extends Collection<JSONObject>> tables, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        Map<String, Integer> symbols = new HashMap<>();
+
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        writeVarInt(data, tables.size());
+        for (Map.Entry<String, ? extends Collection<JSONObject>> table : tables.entrySet()) {
+            writeString(data, table.getKey());
+            writeVarInt(data, table.getValue().size());
+            for (JSONObject record : table.getValue()) {
+                writeRecord(data, record, symbols);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * True if the file starts with the binary snapshot signature.
+     */
+    public static boolean matches(byte[] header) {
+        return header.length >= 4
+                && ((header[0] & 0xFF) << 24 | (header[1] & 0xFF) << 16 | (header[2] & 0xFF) << 8 | (header[3] & 0xFF)) == MAGIC;
+    }
+
+    // ------- RECORDS -------
+
+    private static void writeRecord(DataOutputStream out, JSONObject record, Map<String, Integer> symbols) throws IOException {
+        writeVarInt(out, record.length());
+        for (String key : record.keySet()) {
+            writeSymbol(out, key, symbols);
+            Object value = record.opt(key);
+            if (value instanceof String && SYMBOL_FIELDS.contains(key)) {
+                out.writeByte(TAG_SYMBOL);
+                writeSymbol(out, (String) value, symbols);
+            } else {
+                writeValue(out, value);
+            }
+        }
+    }
+
+    private static JSONObject readRecord(DataInputStream in, List<String> symbols) throws IOException {
+        int fieldCount = readVarInt(in);
+        JSONObject record = new JSONObject();
+        for (int i = 0; i < fieldCount; i++) {
+            String key = readSymbol(in, symbols);
+            record.put(key, readValue(in, symbols));
+        }
+        return record;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TAG_LONG);
+            writeVarLong(out, zigZag(((Number) value).longValue()));
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            out.writeByte(TAG_NUMBER);
+            writeString(out, value.toString());
+        } else if (value instanceof JSONObject) {
+            out.writeByte(TAG_OBJECT);
+            writeString(out, value.toString());
+        } else if (value instanceof JSONArray) {
+            out.writeByte(TAG_ARRAY);
+            writeString(out, value.toString());
+        } else {
+            out.writeByte(TAG_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in, List<String> symbols) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case TAG_NULL:
+                return JSONObject.NULL;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_LONG:
+                long value = unZigZag(readVarLong(in));
+                // Same narrowing org.json applies when parsing numbers
+                return value == (int) value ? (Object) (int) value : (Object) value;
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_NUMBER:
+                return JSONObject.stringToValue(readString(in));
+            case TAG_STRING:
+                return readString(in);
+            case TAG_SYMBOL:
+                return readSymbol(in, symbols);
+            case TAG_OBJECT:
+                return new JSONObject(readString(in));
+            case TAG_ARRAY:
+                return new JSONArray(readString(in));
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    // ------- PRIMITIVES -------
+
+    private static void writeSymbol(DataOutputStream out, String symbol, Map<String, Integer> symbols) throws IOException {
+        Integer number = symbols.get(symbol);
+        if (number != null) {
+            writeVarInt(out, number + 1);
+            return;
+        }
+        symbols.put(symbol, symbols.size());
+        writeVarInt(out, 0);
+        writeString(out, symbol);
+    }
+
+    private static String readSymbol(DataInputStream in, List<String> symbols) throws IOException {
+        int reference = readVarInt(in);
+        if (reference == 0) {
+            String symbol = readString(in);
+            symbols.add(symbol);
+            return symbol;
+        }
+        if (reference > symbols.size()) {
+            throw new IOException("Unknown symbol " + (reference - 1));
+        }
+        return symbols.get(reference - 1);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length <= STRING_CHUNK) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // A corrupt length can claim more than the file holds, so only buffer what actually arrives
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(STRING_CHUNK);
+        byte[] chunk = new byte[STRING_CHUNK];
+        for (int left = length; left > 0; ) {
+            int read = in.read(chunk, 0, Math.min(left, STRING_CHUNK));
+            if (read < 0) {
+                throw new EOFException("String of " + length + " bytes runs past the end of the snapshot");
+            }
+            bytes.write(chunk, 0, read);
+            left -= read;
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Length out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    // LEB128: 7 bits per byte, high bit set while more bytes follow
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
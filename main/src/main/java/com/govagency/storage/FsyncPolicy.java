@@ -0,0 +1,14 @@
+package com.govagency.storage;
+
+/**
+ * When appended journal data is forced to the storage device.
+ * Snapshots are always forced before they replace the live file.
+ */
+public enum FsyncPolicy {
+    /** Force after every journal entry. Safest and slowest. */
+    PER_WRITE,
+    /** Force once per group of entries written together. */
+    BATCH,
+    /** Force at most once per configured interval, and at the latest about one interval after an append; a crash can lose the last interval. */
+    TIMED
+}
@@ -0,0 +1,169 @@
+package com.govagency.storage;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Append-only log of database mutations, one JSON object per line.
+ * Entries are replayed on top of the last snapshot when the database is loaded.
+ */
+public class Journal {
+
+    private final Path path;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final StorageStats stats;
+
+    private FileOutputStream out;
+    private Writer writer;
+    private int entryCount;
+    private boolean unsynced;
+    private long lastSync = System.nanoTime();
+
+    public Journal(Path path, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis, StorageStats stats) {
+        this.path = path;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = fsyncIntervalMillis * 1_000_000;
+        this.stats = stats;
+    }
+
+    /**
+     * Read every complete entry in the log. A torn last line (crash mid-append)
+     * is cut off the file, so the next append starts on a fresh line.
+     */
+    public List<JSONObject> readEntries() {
+        List<JSONObject> entries = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return entries;
+        }
+
+        try {
+            byte[] bytes = Files.readAllBytes(path);
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+            for (String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")) {
+                if (line.isBlank()) continue;
+                try {
+                    entries.add(new JSONObject(line));
+                } catch (JSONException e) {
+                    System.err.println("Skipping unreadable journal entry: " + e.getMessage());
+                }
+            }
+            if (end < bytes.length) {
+                System.err.println("Dropping torn journal entry of " + (bytes.length - end) + " bytes");
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                    channel.force(false);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading journal: " + e.getMessage());
+        }
+
+        entryCount = entries.size();
+        return entries;
+    }
+
+    /**
+     * Append a group of serialized entries. Under {@link FsyncPolicy#BATCH} the whole group costs one fsync.
+     */
+    public void appendAll(List<String> entries) throws IOException {
+        if (entries.isEmpty()) return;
+
+        if (writer == null) {
+            out = new FileOutputStream(path.toFile(), true);
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        }
+
+        for (String entry : entries) {
+            writer.write(entry);
+            writer.write('\n');
+            entryCount++;
+            stats.recordJournalWrite();
+
+            if (fsyncPolicy == FsyncPolicy.PER_WRITE) {
+                sync();
+            }
+        }
+        writer.flush();
+        unsynced = fsyncPolicy != FsyncPolicy.PER_WRITE;
+
+        if (fsyncPolicy == FsyncPolicy.BATCH
+                || (fsyncPolicy == FsyncPolicy.TIMED && System.nanoTime() - lastSync >= fsyncIntervalNanos)) {
+            sync();
+        }
+    }
+
+    /**
+     * Under {@link FsyncPolicy#TIMED}, force entries that have waited a full
+     * interval. Called when the persister is idle, so a burst followed by quiet
+     * is not left unsynced until the next append.
+     */
+    public void syncIfDue() throws IOException {
+        if (unsynced && System.nanoTime() - lastSync >= fsyncIntervalNanos) {
+            sync();
+        }
+    }
+
+    /**
+     * Force everything appended so far to the storage device.
+     */
+    public void sync() throws IOException {
+        if (writer == null) return;
+
+        writer.flush();
+        long start = System.nanoTime();
+        out.getChannel().force(false);
+        lastSync = System.nanoTime();
+        stats.recordSync(lastSync - start);
+        unsynced = false;
+    }
+
+    /**
+     * Drop all entries, called once their effects are part of a snapshot.
+     */
+    public void reset() throws IOException {
+        closeWriter();
+        Files.deleteIfExists(path);
+        entryCount = 0;
+    }
+
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    public void close() throws IOException {
+        if (unsynced) {
+            sync();
+        }
+        closeWriter();
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            out = null;
+            unsynced = false;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.govagency.storage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The original human-readable format: one pretty-printed JSON object with an
+ * array per table.
+ */
+public class JsonSnapshotCodec implements SnapshotCodec {
+
+    private static final int INDENT = 4;
+
+    @Override
+    public int read(InputStream in, BiConsumer<String, JSONObject> sink) throws IOException {
+        try {
+            return new SnapshotReader(new InputStreamReader(in, StandardCharsets.UTF_8)).read(sink);
+        } catch (JSONException e) {
+            throw new IOException("Invalid JSON snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void write(Map<String, ? extends Collection<JSONObject>> tables, OutputStream out) throws IOException {
+        JSONObject root = new JSONObject();
+        for (Map.Entry<String, ? extends Collection<JSONObject>> table : tables.entrySet()) {
+            root.put(table.getKey(), new JSONArray(table.getValue()));
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        root.write(writer, INDENT, 0);
+        writer.flush();
+    }
+}
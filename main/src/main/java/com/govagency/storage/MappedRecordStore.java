@@ -0,0 +1,481 @@
+package com.govagency.storage;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Record store for a table whose records mostly change by status.
+ *
+ * <p>Every record owns a fixed-size slot in a memory-mapped slot file, and its
+ * status is a single byte at a fixed position in that slot, so a status
+ * transition is one byte written in place. The remaining fields are kept as
+ * JSON text in an append-only heap file the slot points to. Rewriting other
+ * fields appends a new heap entry; the space of old entries is reclaimed by
+ * {@link #compactIfNeeded()}.
+ *
+ * <pre>
+ * name.slots := header(32) slot(24)*
+ *   header   := magic:i32 version:i32 heapGeneration:i64 slotCount:i32 reserved
+ *   slot     := status:u8 pad(3) crc32:i32 heapOffset:i64 heapLength:i32 reserved:i32
+ * name.heap  := magic:i32 pad(4) generation:i64 entry*
+ * </pre>
+ *
+ * Status byte 0 marks a free slot; 255 means the status is not one of the
+ * known values and is kept in the heap entry instead. Heap entries carry a
+ * CRC in their slot, so an entry lost in a crash before {@link #force()} is
+ * detected and skipped on load. Replacing a record fills a fresh slot and
+ * frees the old one only once the new heap entry is forced, so a crash never
+ * leaves the record without an intact entry; if both slots survive, load
+ * keeps the one pointing further into the heap.
+ */
+public class MappedRecordStore implements Closeable {
+
+    private static final int SLOTS_MAGIC = 0x4741534C; // "GASL"
+    private static final int HEAP_MAGIC = 0x47414850;  // "GAHP"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_GENERATION = 8;
+    private static final int H_SLOT_COUNT = 16;
+
+    private static final int SLOT_SIZE = 24;
+    private static final int S_STATUS = 0;
+    private static final int S_CRC = 4;
+    private static final int S_OFFSET = 8;
+    private static final int S_LENGTH = 16;
+
+    private static final int HEAP_HEADER_SIZE = 16;
+    private static final int INITIAL_SLOTS = 1024;
+
+    private static final byte FREE = 0;
+    private static final byte STATUS_IN_HEAP = (byte) 0xFF;
+
+    // Heap garbage that triggers compaction, once it also exceeds the live data
+    private static final long COMPACT_MIN_GARBAGE = 1024 * 1024;
+
+    private final Path slotsPath;
+    private final Path heapPath;
+    private final List<String> statuses;
+    private final StorageStats stats;
+    private final boolean created;
+
+    private FileChannel slotsChannel;
+    private MappedByteBuffer slots;
+    private FileChannel heap;
+    private long heapSize;
+    private long liveHeapBytes;
+    private long generation;
+    private int slotCount;
+
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    // Slots of replaced records, freed by the next force()
+    private final Deque<Integer> supersededSlots = new ArrayDeque<>();
+
+    /**
+     * Open the store at {@code base.slots} / {@code base.heap}, creating it if missing.
+     * @param statuses known status values; at most 254
+     */
+    public MappedRecordStore(Path base, List<String> statuses, StorageStats stats) throws IOException {
+        if (statuses.size() > 254) {
+            throw new IllegalArgumentException("Too many status values: " + statuses.size());
+        }
+        this.slotsPath = slotsPath(base);
+        this.heapPath = heapPath(base);
+        this.statuses = statuses;
+        this.stats = stats;
+
+        finishInterruptedCompaction();
+        this.created = !Files.exists(slotsPath);
+        if (created) {
+            create();
+        }
+        open();
+    }
+
+    public static boolean exists(Path base) {
+        return Files.exists(slotsPath(base));
+    }
+
+    public static void delete(Path base) throws IOException {
+        Files.deleteIfExists(slotsPath(base));
+        Files.deleteIfExists(heapPath(base));
+    }
+
+    private static Path slotsPath(Path base) {
+        return base.resolveSibling(base.getFileName() + ".slots");
+    }
+
+    private static Path heapPath(Path base) {
+        return base.resolveSibling(base.getFileName() + ".heap");
+    }
+
+    private static Path temp(Path path) {
+        return path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    /**
+     * True if the files did not exist and were created by this instance.
+     */
+    public boolean isCreated() {
+        return created;
+    }
+
+    // ------- OPEN / LOAD -------
+
+    private void create() throws IOException {
+        writeHeap(heapPath, 0, ByteBuffer.allocate(0));
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(H_MAGIC, SLOTS_MAGIC).putInt(H_VERSION, VERSION).putLong(H_GENERATION, 0);
+        writeFully(slotsPath, header);
+    }
+
+    private void open() throws IOException {
+        heap = FileChannel.open(heapPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer heapHeader = read(heap, 0, HEAP_HEADER_SIZE);
+        if (heapHeader.getInt(0) != HEAP_MAGIC) {
+            throw new IOException("Not a record heap: " + heapPath);
+        }
+        heapSize = heap.size();
+
+        slotsChannel = FileChannel.open(slotsPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        slots = slotsChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.max(slotsChannel.size(), HEADER_SIZE + (long) INITIAL_SLOTS * SLOT_SIZE));
+        if (slots.getInt(H_MAGIC) != SLOTS_MAGIC || slots.getInt(H_VERSION) != VERSION) {
+            throw new IOException("Not a record slot file: " + slotsPath);
+        }
+        generation = slots.getLong(H_GENERATION);
+        if (heapHeader.getLong(8) != generation) {
+            throw new IOException("Record heap " + heapPath.getFileName() + " does not belong to " + slotsPath.getFileName());
+        }
+        slotCount = slots.getInt(H_SLOT_COUNT);
+    }
+
+    /**
+     * Read every record into {@code sink}. Must be called once, before any change.
+     * @return number of records read
+     */
+    public synchronized int load(Consumer<JSONObject> sink) throws IOException {
+        int count = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int position = slotPosition(slot);
+            byte status = slots.get(position + S_STATUS);
+            if (status == FREE) {
+                freeSlots.add(slot);
+                continue;
+            }
+
+            int length = slots.getInt(position + S_LENGTH);
+            long offset = slots.getLong(position + S_OFFSET);
+            JSONObject record = null;
+            try {
+                if ((status & 0xFF) > statuses.size() && status != STATUS_IN_HEAP) {
+                    throw new EOFException("Unknown status byte " + (status & 0xFF));
+                }
+                if (length < 0 || offset < HEAP_HEADER_SIZE || offset + length > heapSize) {
+                    throw new EOFException("Heap entry out of range");
+                }
+                byte[] bytes = read(heap, offset, length).array();
+                if (crc(bytes) == slots.getInt(position + S_CRC)) {
+                    record = new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+                }
+            } catch (EOFException | JSONException e) {
+                // Handled below like a checksum mismatch
+            }
+            if (record == null || !record.has("id")) {
+                System.err.println("Skipping damaged record in " + slotsPath.getFileName() + " slot " + slot);
+                slots.put(position + S_STATUS, FREE);
+                freeSlots.add(slot);
+                continue;
+            }
+
+            String id = record.getString("id");
+            Integer other = slotById.get(id);
+            if (other != null) {
+                // A crash between replacing the record and freeing its old slot; the later heap entry wins
+                int otherPosition = slotPosition(other);
+                int stale = offset > slots.getLong(otherPosition + S_OFFSET) ? other : slot;
+                int stalePosition = slotPosition(stale);
+                slots.put(stalePosition + S_STATUS, FREE);
+                freeSlots.add(stale);
+                if (stale == slot) continue;
+                liveHeapBytes -= slots.getInt(stalePosition + S_LENGTH);
+                count--;
+            }
+
+            if (status != STATUS_IN_HEAP) {
+                record.put("status", statuses.get((status & 0xFF) - 1));
+            }
+            slotById.put(id, slot);
+            liveHeapBytes += length;
+            sink.accept(record);
+            count++;
+        }
+        return count;
+    }
+
+    // ------- CHANGES -------
+
+    /**
+     * Insert or replace a record, keyed by its {@code id} field.
+     */
+    public synchronized void put(JSONObject record) throws IOException {
+        String id = record.getString("id");
+        byte status = statusByte(record.opt("status"));
+
+        JSONObject fields = new JSONObject();
+        for (String key : record.keySet()) {
+            if (status == STATUS_IN_HEAP || !key.equals("status")) {
+                fields.put(key, record.get(key));
+            }
+        }
+        byte[] bytes = fields.toString().getBytes(StandardCharsets.UTF_8);
+        long offset = appendHeap(bytes);
+
+        Integer previous = slotById.get(id);
+        int slot = allocateSlot();
+        slotById.put(id, slot);
+        if (previous != null) {
+            // Left intact until the new entry is on disk
+            liveHeapBytes -= slots.getInt(slotPosition(previous) + S_LENGTH);
+            supersededSlots.add(previous);
+        }
+        liveHeapBytes += bytes.length;
+
+        int position = slotPosition(slot);
+        slots.putInt(position + S_CRC, crc(bytes));
+        slots.putLong(position + S_OFFSET, offset);
+        slots.putInt(position + S_LENGTH, bytes.length);
+        // Written last: a non-zero status is what marks the slot as used
+        slots.put(position + S_STATUS, status);
+    }
+
+    /**
+     * Change a record's status in place.
+     * @return false if the record is unknown or the status does not fit in the status byte;
+     *         the caller then has to {@link #put} the whole record
+     */
+    public synchronized boolean updateStatus(String id, String status) {
+        Integer slot = slotById.get(id);
+        byte value = statusByte(status);
+        if (slot == null || value == STATUS_IN_HEAP) {
+            return false;
+        }
+
+        int position = slotPosition(slot) + S_STATUS;
+        if (slots.get(position) == STATUS_IN_HEAP) {
+            return false;
+        }
+        slots.put(position, value);
+        stats.recordInPlaceUpdate();
+        return true;
+    }
+
+    public synchronized void delete(String id) {
+        Integer slot = slotById.remove(id);
+        if (slot == null) return;
+
+        int position = slotPosition(slot);
+        slots.put(position + S_STATUS, FREE);
+        liveHeapBytes -= slots.getInt(position + S_LENGTH);
+        freeSlots.add(slot);
+    }
+
+    /**
+     * Force heap entries, then slots, to the storage device, and free the
+     * slots of records replaced since the last call.
+     */
+    public synchronized void force() throws IOException {
+        long start = System.nanoTime();
+        heap.force(false);
+        slots.force();
+        stats.recordSync(System.nanoTime() - start);
+        // Their replacements are durable now; the freed status bytes go out with the next force
+        for (Integer slot = supersededSlots.poll(); slot != null; slot = supersededSlots.poll()) {
+            slots.put(slotPosition(slot) + S_STATUS, FREE);
+            freeSlots.add(slot);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (heap == null) return;
+        force();
+        heap.close();
+        slotsChannel.close();
+        heap = null;
+    }
+
+    private byte statusByte(Object status) {
+        int index = status instanceof String ? statuses.indexOf(status) : -1;
+        return index < 0 ? STATUS_IN_HEAP : (byte) (index + 1);
+    }
+
+    private int allocateSlot() throws IOException {
+        Integer free = freeSlots.poll();
+        if (free != null) {
+            return free;
+        }
+
+        int slot = slotCount;
+        long needed = slotPosition(slot) + (long) SLOT_SIZE;
+        if (needed > slots.capacity()) {
+            // Mapping past the end of the file grows it
+            long size = Math.max(needed, 2L * slots.capacity());
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Record slot file is full: " + slotsPath);
+            }
+            slots.force();
+            slots = slotsChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        slotCount++;
+        slots.putInt(H_SLOT_COUNT, slotCount);
+        return slot;
+    }
+
+    private long appendHeap(byte[] bytes) throws IOException {
+        long offset = heapSize;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            heap.write(buffer, offset + buffer.position());
+        }
+        heapSize += bytes.length;
+        return offset;
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    // ------- COMPACTION -------
+
+    /**
+     * Rewrite the heap without superseded and deleted entries once they take
+     * more space than the live records.
+     * @return true if the heap was compacted
+     */
+    public synchronized boolean compactIfNeeded() throws IOException {
+        long garbage = heapSize - HEAP_HEADER_SIZE - liveHeapBytes;
+        if (garbage < COMPACT_MIN_GARBAGE || garbage < liveHeapBytes || liveHeapBytes > Integer.MAX_VALUE - HEAP_HEADER_SIZE) {
+            return false;
+        }
+        compact();
+        return true;
+    }
+
+    /**
+     * Both files are rewritten under a new generation and renamed into place,
+     * heap first. If a crash separates the two renames the new slot file is
+     * renamed on the next open, see {@link #finishInterruptedCompaction()}.
+     */
+    private void compact() throws IOException {
+        // Superseded slots must be free before they are copied, and are no longer needed
+        if (!supersededSlots.isEmpty()) {
+            force();
+        }
+        long newGeneration = generation + 1;
+        ByteBuffer newHeap = ByteBuffer.allocate((int) liveHeapBytes);
+        ByteBuffer newSlots = ByteBuffer.allocate(slotPosition(slotCount));
+        ByteBuffer current = slots.duplicate();
+        current.limit(newSlots.capacity());
+        newSlots.put(current);
+        newSlots.putLong(H_GENERATION, newGeneration);
+
+        for (int slot = 0; slot < slotCount; slot++) {
+            int position = slotPosition(slot);
+            if (newSlots.get(position + S_STATUS) == FREE) continue;
+
+            int length = newSlots.getInt(position + S_LENGTH);
+            long oldOffset = newSlots.getLong(position + S_OFFSET);
+            newSlots.putLong(position + S_OFFSET, HEAP_HEADER_SIZE + (long) newHeap.position());
+            newHeap.put(read(heap, oldOffset, length));
+        }
+        newHeap.flip();
+        newSlots.clear();
+
+        writeHeap(temp(heapPath), newGeneration, newHeap);
+        writeFully(temp(slotsPath), newSlots);
+
+        heap.close();
+        slotsChannel.close();
+        // Each rename is made durable before the next, so recovery only ever sees the heap moved first
+        Files.move(temp(heapPath), heapPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        AtomicFile.syncDirectory(heapPath.toAbsolutePath().getParent());
+        Files.move(temp(slotsPath), slotsPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        AtomicFile.syncDirectory(slotsPath.toAbsolutePath().getParent());
+        open();
+        liveHeapBytes = heapSize - HEAP_HEADER_SIZE;
+    }
+
+    private void finishInterruptedCompaction() throws IOException {
+        boolean heapTemp = Files.exists(temp(heapPath));
+        boolean slotsTemp = Files.exists(temp(slotsPath));
+        if (slotsTemp && !heapTemp) {
+            // The new heap is already in place; its slot file is complete, it was forced before the renames
+            Files.move(temp(slotsPath), slotsPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            AtomicFile.syncDirectory(slotsPath.toAbsolutePath().getParent());
+        } else {
+            // Interrupted before the renames: the old files are intact
+            Files.deleteIfExists(temp(heapPath));
+            Files.deleteIfExists(temp(slotsPath));
+        }
+    }
+
+    // ------- FILE HELPERS -------
+
+    private static void writeHeap(Path path, long generation, ByteBuffer entries) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEAP_HEADER_SIZE);
+        header.putInt(0, HEAP_MAGIC).putLong(8, generation);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) channel.write(header);
+            while (entries.hasRemaining()) channel.write(entries);
+            channel.force(true);
+        }
+    }
+
+    private static void writeFully(Path path, ByteBuffer data) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) channel.write(data);
+            channel.force(true);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of " + length + " bytes at " + position);
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+}
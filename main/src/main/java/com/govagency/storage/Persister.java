@@ -0,0 +1,225 @@
+package com.govagency.storage;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Background thread that coalesces database writes. Callers enqueue changes
+ * and return immediately; the thread gathers everything that arrives within
+ * the flush window and hands it to the {@link Sink} as one batch, so a burst
+ * of edits costs one write (and one fsync) instead of one per edit.
+ *
+ * @param <T> description of a change, e.g. the journal entry to append
+ */
+public class Persister<T> {
+
+    /**
+     * Writes one batch, in submission order, on the persister thread. With a
+     * tick interval, an empty batch arrives whenever that long passes without changes.
+     */
+    public interface Sink<T> {
+        void write(List<T> batch) throws IOException;
+    }
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final Sink<T> sink;
+    private final long windowNanos;
+    private final long tickMillis;
+    private final int capacity;
+    private final Thread thread;
+
+    // Guarded by this
+    private final Queue<T> pending = new ArrayDeque<>();
+    private long submitted;
+    private long durable;
+    private boolean flushRequested;
+    private boolean closed;
+    // Set when the thread ends, normally after close or because of an Error
+    private boolean stopped;
+
+    public Persister(Sink<T> sink, long windowMillis, int capacity) {
+        this(sink, windowMillis, capacity, 0);
+    }
+
+    /**
+     * @param tickMillis idle time after which the sink gets an empty batch, 0 for never
+     */
+    public Persister(Sink<T> sink, long windowMillis, int capacity, long tickMillis) {
+        this.sink = sink;
+        this.windowNanos = windowMillis * 1_000_000;
+        this.tickMillis = tickMillis;
+        this.capacity = capacity;
+        this.thread = new Thread(this::run, "govagency-persister");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Block while the queue is full. Call before taking any lock the sink needs,
+     * so a slow disk applies back-pressure without risking a deadlock.
+     * @throws IllegalStateException if the thread has stopped, so the queue would never drain
+     */
+    public synchronized void awaitCapacity() {
+        while (pending.size() >= capacity && !closed) {
+            checkRunning();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queue a change for the next batch.
+     * @return sequence number to pass to {@link #awaitDurable(long)}
+     */
+    public synchronized long submit(T change) {
+        if (closed) {
+            throw new IllegalStateException("Persister is closed");
+        }
+        checkRunning();
+        pending.add(change);
+        notifyAll();
+        return ++submitted;
+    }
+
+    /**
+     * Wait until the entry with the given sequence number has been written by the sink.
+     */
+    public synchronized void awaitDurable(long sequence) throws InterruptedException {
+        while (durable < sequence && thread.isAlive()) {
+            flushRequested = true;
+            notifyAll();
+            wait(100);
+        }
+    }
+
+    /**
+     * Write everything submitted so far, skipping the rest of the flush window.
+     */
+    public void flush() throws InterruptedException {
+        long sequence;
+        synchronized (this) {
+            sequence = submitted;
+        }
+        awaitDurable(sequence);
+    }
+
+    /**
+     * Flush pending entries and stop the thread.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkRunning() {
+        if (stopped) {
+            throw new IllegalStateException("Persister thread has stopped; changes can no longer be saved");
+        }
+    }
+
+    private void run() {
+        try {
+            writeBatches();
+        } finally {
+            synchronized (this) {
+                stopped = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private void writeBatches() {
+        List<T> batch = new ArrayList<>();
+        while (true) {
+            try {
+                if (!collect(batch)) {
+                    return;
+                }
+                sink.write(batch);
+                markDurable(batch.size());
+                batch.clear();
+            } catch (IOException | RuntimeException e) {
+                // A sink failure of any kind keeps the batch for another try; the thread must not end
+                System.err.println("Error persisting " + batch.size() + " change(s), retrying: " + e);
+                if (!pause()) {
+                    System.err.println("Dropping " + batch.size() + " unsaved change(s) on shutdown");
+                    markDurable(batch.size());
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Wait for the first entry, then keep gathering until the window closes or a flush is requested.
+     * Leaves the batch empty if a tick passed first.
+     * @return false once closed and fully drained
+     */
+    private synchronized boolean collect(List<T> batch) throws InterruptedException {
+        if (!batch.isEmpty()) {
+            // Retrying a failed batch: pick up anything queued since
+            drainTo(batch);
+            return true;
+        }
+
+        while (pending.isEmpty()) {
+            if (closed) return false;
+            if (tickMillis <= 0) {
+                wait();
+                continue;
+            }
+            wait(tickMillis);
+            if (pending.isEmpty() && !closed) return true;
+        }
+
+        long deadline = System.nanoTime() + windowNanos;
+        long remaining;
+        while (!closed && !flushRequested && pending.size() < capacity
+                && (remaining = deadline - System.nanoTime()) > 0) {
+            wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+        }
+
+        flushRequested = false;
+        drainTo(batch);
+        return true;
+    }
+
+    private void drainTo(List<T> batch) {
+        batch.addAll(pending);
+        pending.clear();
+        notifyAll();
+    }
+
+    private synchronized void markDurable(int count) {
+        durable += count;
+        notifyAll();
+    }
+
+    private synchronized boolean pause() {
+        if (closed) return false;
+        try {
+            wait(RETRY_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+}
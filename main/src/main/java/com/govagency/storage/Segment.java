@@ -0,0 +1,105 @@
+package com.govagency.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A snapshot file (with its backups) and a journal holding a fixed set of
+ * tables. Each segment is loaded, saved and compacted on its own, so a change
+ * to one segment never rewrites the bytes of another.
+ */
+public class Segment {
+
+    private final String name;
+    private final List<String> tables;
+    private final StorageFormat format;
+    private final AtomicFile snapshotFile;
+    private final Journal journal;
+
+    /**
+     * @param name file name without extension, e.g. {@code database} or {@code database-citizens}
+     */
+    public Segment(String name, List<String> tables, StorageOptions options, StorageStats stats) {
+        this.name = name;
+        this.tables = List.copyOf(tables);
+        this.format = options.getFormat();
+        this.snapshotFile = new AtomicFile(Path.of(name + format.getExtension()), options.getBackupGenerations(), stats);
+        this.journal = new Journal(Path.of(name + ".journal"), options.getFsyncPolicy(),
+                options.getFsyncIntervalMillis(), stats);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getTables() {
+        return tables;
+    }
+
+    public StorageFormat getFormat() {
+        return format;
+    }
+
+    public AtomicFile getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Snapshot files in the order they should be tried: the live file, its
+     * backups newest first, then live files left in other formats.
+     */
+    public List<Path> snapshotCandidates() {
+        List<Path> candidates = new ArrayList<>();
+        candidates.add(snapshotFile.getPath());
+        for (int generation = 1; generation <= snapshotFile.getBackupGenerations(); generation++) {
+            candidates.add(snapshotFile.backup(generation));
+        }
+        for (StorageFormat other : StorageFormat.values()) {
+            if (other != format) {
+                candidates.add(snapshotFile.getPath().resolveSibling(name + other.getExtension()));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * True if the candidate at this index is a backup of the live file.
+     */
+    public boolean isBackup(int candidate) {
+        return candidate > 0 && candidate <= snapshotFile.getBackupGenerations();
+    }
+
+    public boolean exists() {
+        for (Path candidate : snapshotCandidates()) {
+            if (Files.exists(candidate)) return true;
+        }
+        return journal.exists();
+    }
+
+    /**
+     * Remove every file of this segment, in all formats. Used once its tables
+     * have been saved elsewhere.
+     */
+    public void deleteFiles() throws IOException {
+        for (StorageFormat any : StorageFormat.values()) {
+            Path live = snapshotFile.getPath().resolveSibling(name + any.getExtension());
+            Files.deleteIfExists(live);
+            for (int generation = 1; generation <= snapshotFile.getBackupGenerations(); generation++) {
+                Files.deleteIfExists(live.resolveSibling(live.getFileName() + "." + generation));
+            }
+        }
+        journal.reset();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,31 @@
+package com.govagency.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.json.JSONObject;
+
+/**
+ * On-disk encoding of a database snapshot. Every codec stores the same
+ * records as the JSON schema (table name -> array of flat record objects),
+ * so a snapshot can be converted between formats without loss.
+ */
+public interface SnapshotCodec {
+
+    /**
+     * Stream every record to {@code sink} as (table name, record).
+     * The stream is not closed.
+     * @return number of records read
+     * @throws IOException if the data is truncated or not in this format
+     */
+    int read(InputStream in, BiConsumer<String, JSONObject> sink) throws IOException;
+
+    /**
+     * Write the given tables, in map iteration order. The stream is not closed.
+     */
+    void write(Map<String, ? extends Collection<JSONObject>> tables, OutputStream out) throws IOException;
+}
@@ -0,0 +1,91 @@
+package com.govagency.storage;
+
+import java.io.Reader;
+import java.util.function.BiConsumer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Pull parser for the database snapshot. Records are handed out one at a time
+ * as they are read, so neither the file text nor a DOM of the whole file is
+ * ever held in memory.
+ */
+public class SnapshotReader {
+
+    private final Reader reader;
+
+    /**
+     * @param reader source of the snapshot text; not closed by this class
+     */
+    public SnapshotReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Stream every record of the snapshot to {@code sink} as (table name, record).
+     * Values that are not arrays of objects are skipped.
+     * @return number of records read
+     */
+    public int read(BiConsumer<String, JSONObject> sink) throws JSONException {
+        JSONTokener tokener = new JSONTokener(reader);
+        int count = 0;
+
+        expect(tokener, '{');
+        if (tokener.nextClean() == '}') {
+            return 0;
+        }
+        tokener.back();
+
+        while (true) {
+            String table = tokener.nextValue().toString();
+            expect(tokener, ':');
+
+            if (tokener.nextClean() == '[') {
+                count += readArray(tokener, table, sink);
+            } else {
+                tokener.back();
+                tokener.nextValue();
+            }
+
+            char c = tokener.nextClean();
+            if (c == '}') {
+                return count;
+            }
+            if (c != ',') {
+                throw tokener.syntaxError("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private int readArray(JSONTokener tokener, String table, BiConsumer<String, JSONObject> sink) {
+        int count = 0;
+        if (tokener.nextClean() == ']') {
+            return 0;
+        }
+        tokener.back();
+
+        while (true) {
+            Object value = tokener.nextValue();
+            if (value instanceof JSONObject) {
+                sink.accept(table, (JSONObject) value);
+                count++;
+            }
+
+            char c = tokener.nextClean();
+            if (c == ']') {
+                return count;
+            }
+            if (c != ',') {
+                throw tokener.syntaxError("Expected ',' or ']'");
+            }
+        }
+    }
+
+    private static void expect(JSONTokener tokener, char expected) throws JSONException {
+        if (tokener.nextClean() != expected) {
+            throw tokener.syntaxError("Expected '" + expected + "'");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.govagency.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Snapshot file formats. The format of an existing file is recognized from its
+ * contents, so either kind can be loaded whatever format is configured for writing.
+ */
+public enum StorageFormat {
+    /** Pretty-printed JSON, readable and editable by hand. */
+    JSON(".json", new JsonSnapshotCodec()),
+    /** Compact binary records, see {@link BinarySnapshotCodec}. */
+    BINARY(".bin", new BinarySnapshotCodec());
+
+    private final String extension;
+    private final SnapshotCodec codec;
+
+    StorageFormat(String extension, SnapshotCodec codec) {
+        this.extension = extension;
+        this.codec = codec;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public SnapshotCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Recognize the format of an existing snapshot file from its first bytes.
+     */
+    public static StorageFormat detect(Path path) throws IOException {
+        byte[] header;
+        try (InputStream in = Files.newInputStream(path)) {
+            header = in.readNBytes(4);
+        }
+        return BinarySnapshotCodec.matches(header) ? BINARY : JSON;
+    }
+}
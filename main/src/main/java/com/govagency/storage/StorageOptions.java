@@ -0,0 +1,126 @@
+package com.govagency.storage;
+
+import java.util.Locale;
+
+/**
+ * Tuning knobs for {@code LocalDatabase}. Defaults can be overridden with
+ * {@code -Dgovagency.*} system properties, see {@link #fromSystemProperties()}.
+ */
+public class StorageOptions {
+
+    private StorageFormat format = StorageFormat.JSON;
+    private boolean journal = true;
+    private boolean mappedRecords = false;
+    private boolean segmented = false;
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.BATCH;
+    private long fsyncIntervalMillis = 1000;
+    private int backupGenerations = 3;
+    private long flushWindowMillis = 50;
+    private int queueCapacity = 10_000;
+
+    public static StorageOptions fromSystemProperties() {
+        StorageOptions options = new StorageOptions();
+        options.format = StorageFormat.valueOf(
+                System.getProperty("govagency.format", "json").trim().toUpperCase(Locale.ROOT));
+        options.journal = Boolean.parseBoolean(System.getProperty("govagency.journal", "true"));
+        options.mappedRecords = Boolean.parseBoolean(System.getProperty("govagency.mapped", "false"));
+        options.segmented = Boolean.parseBoolean(System.getProperty("govagency.segmented", "false"));
+        options.fsyncPolicy = FsyncPolicy.valueOf(
+                System.getProperty("govagency.fsync", "batch").trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        options.fsyncIntervalMillis = Long.getLong("govagency.fsync.intervalMs", 1000);
+        options.backupGenerations = Integer.getInteger("govagency.backups", 3);
+        options.flushWindowMillis = Long.getLong("govagency.flushWindowMs", 50);
+        options.queueCapacity = Integer.getInteger("govagency.queueCapacity", 10_000);
+        return options;
+    }
+
+    /**
+     * Format new snapshots are written in. Existing snapshots load in either format.
+     */
+    public StorageFormat getFormat() {
+        return format;
+    }
+
+    public StorageOptions setFormat(StorageFormat format) {
+        this.format = format;
+        return this;
+    }
+
+    public boolean isJournal() {
+        return journal;
+    }
+
+    public StorageOptions setJournal(boolean journal) {
+        this.journal = journal;
+        return this;
+    }
+
+    /**
+     * Keep documents and requests in memory-mapped record stores instead of the snapshot.
+     */
+    public boolean isMappedRecords() {
+        return mappedRecords;
+    }
+
+    public StorageOptions setMappedRecords(boolean mappedRecords) {
+        this.mappedRecords = mappedRecords;
+        return this;
+    }
+
+    /**
+     * Store each table in its own snapshot and journal instead of one shared file.
+     */
+    public boolean isSegmented() {
+        return segmented;
+    }
+
+    public StorageOptions setSegmented(boolean segmented) {
+        this.segmented = segmented;
+        return this;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public StorageOptions setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+        return this;
+    }
+
+    public long getFsyncIntervalMillis() {
+        return fsyncIntervalMillis;
+    }
+
+    public StorageOptions setFsyncIntervalMillis(long fsyncIntervalMillis) {
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        return this;
+    }
+
+    public int getBackupGenerations() {
+        return backupGenerations;
+    }
+
+    public StorageOptions setBackupGenerations(int backupGenerations) {
+        this.backupGenerations = backupGenerations;
+        return this;
+    }
+
+    public long getFlushWindowMillis() {
+        return flushWindowMillis;
+    }
+
+    public StorageOptions setFlushWindowMillis(long flushWindowMillis) {
+        this.flushWindowMillis = flushWindowMillis;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public StorageOptions setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+}
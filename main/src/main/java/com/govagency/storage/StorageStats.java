@@ -0,0 +1,48 @@
+package com.govagency.storage;
+
+/**
+ * Running totals of time spent on durable writes, so the cost of a
+ * {@link FsyncPolicy} can be compared on real workloads.
+ */
+public class StorageStats {
+
+    private long snapshots;
+    private long snapshotNanos;
+    private long journalWrites;
+    private long inPlaceUpdates;
+    private long syncs;
+    private long syncNanos;
+
+    public synchronized void recordSnapshot(long nanos) {
+        snapshots++;
+        snapshotNanos += nanos;
+    }
+
+    public synchronized void recordJournalWrite() {
+        journalWrites++;
+    }
+
+    public synchronized void recordInPlaceUpdate() {
+        inPlaceUpdates++;
+    }
+
+    public synchronized void recordSync(long nanos) {
+        syncs++;
+        syncNanos += nanos;
+    }
+
+    public synchronized long getSnapshots() {
+        return snapshots;
+    }
+
+    public synchronized long getSyncs() {
+        return syncs;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("snapshots: %d (%.1f ms avg), journal writes: %d, in-place updates: %d, fsyncs: %d (%.2f ms avg)",
+                snapshots, snapshots == 0 ? 0.0 : snapshotNanos / 1e6 / snapshots,
+                journalWrites, inPlaceUpdates, syncs, syncs == 0 ? 0.0 : syncNanos / 1e6 / syncs);
+    }
+}
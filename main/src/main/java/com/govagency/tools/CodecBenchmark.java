@@ -0,0 +1,120 @@
+package com.govagency.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.json.JSONObject;
+
+import com.govagency.model.Document;
+import com.govagency.model.ServiceRequest;
+import com.govagency.storage.SnapshotCodec;
+import com.govagency.storage.StorageFormat;
+
+/**
+ * Compares snapshot size and save/load time of each storage format on
+ * synthetic data shaped like the real tables.
+ *
+ * <pre>
+ * java com.govagency.tools.CodecBenchmark [citizens] [documentsPerCitizen] [requestsPerCitizen]
+ * </pre>
+ */
+public class CodecBenchmark {
+
+    private static final String[] SERVICE_TYPES = {
+        "Passport Renewal", "Business Permit", "Birth Certificate", "Tax Clearance", "Barangay Clearance"
+    };
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int citizens = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int documentsPerCitizen = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int requestsPerCitizen = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Map<String, List<JSONObject>> tables = generate(citizens, documentsPerCitizen, requestsPerCitizen);
+        int records = 0;
+        for (List<JSONObject> rows : tables.values()) {
+            records += rows.size();
+        }
+        System.out.printf("%d records (%d citizens), best of %d rounds%n", records, citizens, ROUNDS);
+        System.out.printf("%-8s %12s %10s %10s%n", "format", "bytes", "save ms", "load ms");
+
+        for (StorageFormat format : StorageFormat.values()) {
+            SnapshotCodec codec = format.getCodec();
+            byte[] data = null;
+            long bestSave = Long.MAX_VALUE;
+            long bestLoad = Long.MAX_VALUE;
+
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                codec.write(tables, out);
+                data = out.toByteArray();
+                bestSave = Math.min(bestSave, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                int loaded = codec.read(new ByteArrayInputStream(data), (table, record) -> { });
+                bestLoad = Math.min(bestLoad, System.nanoTime() - start);
+                if (loaded != records) {
+                    throw new IllegalStateException(format + " read " + loaded + " of " + records + " records");
+                }
+            }
+
+            System.out.printf("%-8s %12d %10.1f %10.1f%n", format.name().toLowerCase(),
+                    data.length, bestSave / 1e6, bestLoad / 1e6);
+        }
+    }
+
+    static Map<String, List<JSONObject>> generate(int citizens, int documentsPerCitizen, int requestsPerCitizen) {
+        Random random = new Random(42);
+        List<JSONObject> citizenRows = new ArrayList<>();
+        List<JSONObject> documentRows = new ArrayList<>();
+        List<JSONObject> requestRows = new ArrayList<>();
+        LocalDateTime date = LocalDateTime.of(2024, 1, 1, 8, 0);
+
+        for (int c = 1; c <= citizens; c++) {
+            String citizenId = String.valueOf(c);
+            citizenRows.add(new JSONObject()
+                    .put("id", citizenId)
+                    .put("name", "Citizen Number " + c)
+                    .put("email", "citizen" + c + "@example.com")
+                    .put("number", String.format("09%09d", random.nextInt(1_000_000_000))));
+
+            for (int d = 0; d < documentsPerCitizen; d++) {
+                documentRows.add(new JSONObject()
+                        .put("id", "DOC-" + citizenId + "-" + d)
+                        .put("ownerId", citizenId)
+                        .put("status", pick(random, Document.Status.values()).name())
+                        .put("uploadTime", date.toInstant(ZoneOffset.UTC).toEpochMilli()));
+            }
+
+            for (int r = 0; r < requestsPerCitizen; r++) {
+                date = date.plusSeconds(random.nextInt(600));
+                requestRows.add(new JSONObject()
+                        .put("id", "REQ-" + citizenId + "-" + r)
+                        .put("citizenId", citizenId)
+                        .put("type", pick(random, SERVICE_TYPES))
+                        .put("description", "Synthetic request " + r + " for citizen " + c)
+                        .put("status", pick(random, ServiceRequest.Status.values()).name())
+                        .put("date", date.toInstant(ZoneOffset.UTC).toEpochMilli()));
+            }
+        }
+
+        Map<String, List<JSONObject>> tables = new LinkedHashMap<>();
+        tables.put("citizens", citizenRows);
+        tables.put("documents", documentRows);
+        tables.put("requests", requestRows);
+        return tables;
+    }
+
+    private static <T> T pick(Random random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
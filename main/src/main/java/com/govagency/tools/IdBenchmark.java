@@ -0,0 +1,121 @@
+package com.govagency.tools;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import com.govagency.util.IdGenerator;
+
+/**
+ * Checks that {@link IdGenerator} hands out unique, increasing ids from many
+ * threads at once, and compares its speed and allocation per id with the
+ * formatted-timestamp ids it replaced.
+ *
+ * <pre>
+ * java com.govagency.tools.IdBenchmark [threads] [idsPerThread]
+ * </pre>
+ */
+public class IdBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int idsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 250_000;
+
+        IdGenerator generator = new IdGenerator();
+        checkConcurrent(generator, threads, idsPerThread);
+
+        System.out.printf("%d ids, best of %d rounds%n", idsPerThread, ROUNDS);
+        System.out.printf("%-12s %10s %12s%n", "generator", "ns/id", "bytes/id");
+        measure("formatter", idsPerThread, () -> {
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMddyy-HHmm-ss");
+            return "DOC-1-" + LocalDateTime.now().format(formatter);
+        });
+        measure("nextString", idsPerThread, () -> "DOC-1-" + generator.nextString());
+        measureLong("nextId", idsPerThread, generator::nextId);
+    }
+
+    private static void checkConcurrent(IdGenerator generator, int threads, int idsPerThread)
+            throws InterruptedException {
+        long[][] ids = new long[threads][idsPerThread];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long[] out = ids[t];
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = generator.nextId();
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread worker : workers) worker.start();
+        for (Thread worker : workers) worker.join();
+        long elapsed = System.nanoTime() - start;
+
+        long[] all = new long[threads * idsPerThread];
+        for (int t = 0; t < threads; t++) {
+            for (int i = 1; i < idsPerThread; i++) {
+                if (ids[t][i] <= ids[t][i - 1]) {
+                    throw new IllegalStateException("Thread " + t + " saw id " + ids[t][i] + " after " + ids[t][i - 1]);
+                }
+            }
+            System.arraycopy(ids[t], 0, all, t * idsPerThread, idsPerThread);
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            if (all[i] == all[i - 1]) {
+                throw new IllegalStateException("Duplicate id " + all[i]);
+            }
+        }
+        System.out.printf("%d threads x %d ids: all unique and increasing, %.0f ids/s%n",
+                threads, idsPerThread, all.length / (elapsed / 1e9));
+    }
+
+    private static void measure(String name, int count, Supplier<String> next) {
+        long sink = 0;
+        long bestTime = Long.MAX_VALUE;
+        long bestBytes = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                sink += next.get().length();
+            }
+            bestTime = Math.min(bestTime, System.nanoTime() - start);
+            bestBytes = Math.min(bestBytes, allocatedBytes() - bytes);
+        }
+        report(name, count, bestTime, bestBytes, sink);
+    }
+
+    private static void measureLong(String name, int count, LongSupplier next) {
+        long sink = 0;
+        long bestTime = Long.MAX_VALUE;
+        long bestBytes = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                sink += next.getAsLong();
+            }
+            bestTime = Math.min(bestTime, System.nanoTime() - start);
+            bestBytes = Math.min(bestBytes, allocatedBytes() - bytes);
+        }
+        report(name, count, bestTime, bestBytes, sink);
+    }
+
+    private static void report(String name, int count, long nanos, long bytes, long sink) {
+        // Printing the sink keeps the JIT from dropping the loop
+        System.out.printf("%-12s %10.1f %12.1f%s%n", name, (double) nanos / count, (double) bytes / count,
+                sink == 42 ? " " : "");
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,68 @@
+package com.govagency.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import com.govagency.storage.StorageFormat;
+
+/**
+ * Converts a snapshot between storage formats, e.g. to export a binary
+ * database as JSON for inspection or to import a JSON file into binary.
+ *
+ * <pre>
+ * java com.govagency.tools.SnapshotConverter &lt;input&gt; &lt;output&gt; json|binary
+ * </pre>
+ *
+ * The input format is recognized from the file contents. Stop the app first:
+ * changes still in its journal are not part of the snapshot.
+ */
+public class SnapshotConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: SnapshotConverter <input> <output> json|binary");
+            System.exit(2);
+        }
+
+        Path input = Path.of(args[0]);
+        Path output = Path.of(args[1]);
+        StorageFormat target = StorageFormat.valueOf(args[2].trim().toUpperCase(Locale.ROOT));
+
+        int records = convert(input, output, target);
+        System.out.printf("Converted %d records: %s (%d bytes) -> %s (%d bytes)%n",
+                records, input, Files.size(input), output, Files.size(output));
+    }
+
+    // Written even when empty, like LocalDatabase does
+    private static final String[] TABLES = {"citizens", "documents", "requests"};
+
+    /**
+     * @return number of records converted
+     */
+    public static int convert(Path input, Path output, StorageFormat target) throws IOException {
+        Map<String, List<JSONObject>> tables = new LinkedHashMap<>();
+        for (String table : TABLES) {
+            tables.put(table, new ArrayList<>());
+        }
+        int records;
+        try (InputStream in = Files.newInputStream(input)) {
+            records = StorageFormat.detect(input).getCodec().read(in,
+                    (table, record) -> tables.computeIfAbsent(table, k -> new ArrayList<>()).add(record));
+        }
+
+        try (OutputStream out = Files.newOutputStream(output)) {
+            target.getCodec().write(tables, out);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,293 @@
+package com.govagency.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory index for finding citizens by part of their name, email or phone number.
+ *
+ * <p>Each citizen gets a slot holding its normalized fields: name and email
+ * in lower case, the number as digits only. Two indexes point at slots:
+ * <ul>
+ *   <li>sorted name words, which answer prefix queries with a range scan;</li>
+ *   <li>trigrams (every three consecutive characters of a field), which
+ *       narrow a substring query down to the slots having all its trigrams.</li>
+ * </ul>
+ * Emails and numbers are unique, so they are only reached through trigrams;
+ * keeping them as sorted terms too would triple the size of the word tree.
+ * Results are ranked exact name words first, then other words starting with
+ * the query, then substring matches in insertion order; a search stops once it has
+ * {@code limit} of them, so its cost depends on the limit, not on the number
+ * of citizens.
+ *
+ * <p>Changing a citizen empties its slot and fills a new one; empty slots are
+ * skipped and dropped when the index rebuilds itself. Not thread-safe.
+ */
+public class CitizenSearchIndex {
+
+    // Rebuild once more than this share of the slots are empty
+    private static final int MAX_EMPTY_PERCENT = 50;
+
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private final List<Entry> slots = new ArrayList<>();
+    private final NavigableMap<String, Postings> terms = new TreeMap<>();
+    private final Map<Long, Postings> trigrams = new HashMap<>();
+    private int emptySlots;
+
+    private static final class Entry {
+        final String id;
+        final String name;
+        final String email;
+        final String number;
+
+        Entry(String id, String name, String email, String number) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+            this.number = number;
+        }
+
+        boolean contains(String text, String digits) {
+            return name.contains(text) || email.contains(text) || (!digits.isEmpty() && number.contains(digits));
+        }
+    }
+
+    /**
+     * Ascending slot numbers; slots are handed out in increasing order, so appending keeps them sorted.
+     */
+    private static final class Postings {
+        int[] slots = new int[2];
+        int size;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        /**
+         * Index of the first slot at or after {@code from} that is not below {@code slot}.
+         * Gallops ahead, so walking a list in order costs about its length.
+         */
+        int seek(int from, int slot) {
+            int step = 1;
+            int low = from;
+            int high = from;
+            while (high < size && slots[high] < slot) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int found = Arrays.binarySearch(slots, low, Math.min(high + 1, size), slot);
+            return found >= 0 ? found : -found - 1;
+        }
+    }
+
+    /**
+     * Add a citizen, or replace what is indexed for it.
+     */
+    public void put(String id, String name, String email, String number) {
+        remove(id);
+
+        Entry entry = new Entry(id, normalize(name), normalize(email), digitsOf(number));
+        int slot = slots.size();
+        slots.add(entry);
+        slotById.put(id, slot);
+
+        for (String word : new HashSet<>(Arrays.asList(entry.name.split(" ")))) {
+            if (!word.isEmpty()) {
+                terms.computeIfAbsent(word, k -> new Postings()).add(slot);
+            }
+        }
+
+        for (long trigram : trigramsOf(entry.name, entry.email, entry.number)) {
+            trigrams.computeIfAbsent(trigram, k -> new Postings()).add(slot);
+        }
+    }
+
+    public void remove(String id) {
+        Integer slot = slotById.remove(id);
+        if (slot == null) return;
+
+        slots.set(slot, null);
+        emptySlots++;
+        if (emptySlots > 1024 && emptySlots * 100L > slots.size() * (long) MAX_EMPTY_PERCENT) {
+            rebuild();
+        }
+    }
+
+    public int size() {
+        return slotById.size();
+    }
+
+    /**
+     * Ids of up to {@code limit} citizens matching {@code query}, best first.
+     * Queries shorter than three characters only match the start of name words.
+     */
+    public List<String> search(String query, int limit) {
+        String text = normalize(query);
+        String digits = isPhoneQuery(query) ? digitsOf(query) : "";
+        Set<Integer> found = new LinkedHashSet<>();
+        if (text.isEmpty() || limit <= 0) return new ArrayList<>();
+
+        collectPrefixMatches(text, found, limit);
+        collectSubstringMatches(text, digits, found, limit);
+
+        List<String> ids = new ArrayList<>(found.size());
+        for (int slot : found) {
+            ids.add(slots.get(slot).id);
+        }
+        return ids;
+    }
+
+    // The range starts at the word equal to the prefix, so exact matches come first
+    private void collectPrefixMatches(String prefix, Set<Integer> found, int limit) {
+        for (Postings postings : terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            for (int i = 0; i < postings.size; i++) {
+                if (found.size() >= limit) return;
+                int slot = postings.slots[i];
+                if (slots.get(slot) != null) {
+                    found.add(slot);
+                }
+            }
+        }
+    }
+
+    private void collectSubstringMatches(String text, String digits, Set<Integer> found, int limit) {
+        if (found.size() >= limit) return;
+        // A phone query is looked up by its digits; its text form would need the separators
+        String key = digits.isEmpty() ? text : digits;
+        if (key.length() < 3) return;
+
+        long[] queryTrigrams = trigramsOf(key);
+        Postings[] lists = new Postings[queryTrigrams.length];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = trigrams.get(queryTrigrams[i]);
+            if (lists[i] == null) return;
+        }
+        // Walk the shortest list, moving a cursor through each of the others
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        Postings shortest = lists[0];
+        int[] cursors = new int[lists.length];
+
+        candidates:
+        for (int i = 0; i < shortest.size && found.size() < limit; i++) {
+            int slot = shortest.slots[i];
+            for (int j = 1; j < lists.length; j++) {
+                cursors[j] = lists[j].seek(cursors[j], slot);
+                if (cursors[j] == lists[j].size) break candidates;
+                if (lists[j].slots[cursors[j]] != slot) continue candidates;
+            }
+            Entry entry = slots.get(slot);
+            // Having every trigram does not guarantee they appear in a row
+            if (entry != null && !found.contains(slot) && entry.contains(text, digits)) {
+                found.add(slot);
+            }
+        }
+    }
+
+    private void rebuild() {
+        List<Entry> live = new ArrayList<>(slotById.size());
+        for (Entry entry : slots) {
+            if (entry != null) {
+                live.add(entry);
+            }
+        }
+        slotById.clear();
+        slots.clear();
+        terms.clear();
+        trigrams.clear();
+        emptySlots = 0;
+        // Fields are already normalized, and normalizing is idempotent
+        for (Entry entry : live) {
+            put(entry.id, entry.name, entry.email, entry.number);
+        }
+    }
+
+    /**
+     * Distinct trigrams of the fields, each packed as three chars 21 bits apart.
+     * The gaps keep {@link Long#hashCode} from folding the first char onto the
+     * last, which would crowd latin text into a few hash buckets.
+     */
+    private static long[] trigramsOf(String... fields) {
+        int count = 0;
+        for (String field : fields) {
+            count += Math.max(field.length() - 2, 0);
+        }
+        long[] packed = new long[count];
+        int n = 0;
+        for (String field : fields) {
+            for (int i = 0; i + 3 <= field.length(); i++) {
+                packed[n++] = (long) field.charAt(i) << 42 | (long) field.charAt(i + 1) << 21 | field.charAt(i + 2);
+            }
+        }
+        Arrays.sort(packed);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || packed[i] != packed[distinct - 1]) {
+                packed[distinct++] = packed[i];
+            }
+        }
+        return Arrays.copyOf(packed, distinct);
+    }
+
+    /**
+     * Lower case, trimmed, with runs of whitespace as one space.
+     */
+    private static String normalize(String value) {
+        if (value == null) return "";
+        // strip(), unlike trim(), also removes Unicode spaces such as U+3000
+        String lower = value.strip().toLowerCase(Locale.ROOT);
+        StringBuilder out = new StringBuilder(lower.length());
+        boolean changed = false;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                out.append(c);
+            } else if (out.length() > 0 && out.charAt(out.length() - 1) != ' ') {
+                out.append(' ');
+                changed |= c != ' ';
+            } else {
+                changed = true;
+            }
+        }
+        return changed ? out.toString() : lower;
+    }
+
+    private static String digitsOf(String value) {
+        if (value == null) return "";
+        StringBuilder digits = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
+    // Digits with the usual separators, e.g. "0917 123", "+63-917"
+    private static boolean isPhoneQuery(String query) {
+        if (query == null) return false;
+        boolean digit = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if (!Character.isWhitespace(c) && "+()-".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return digit;
+    }
+}
@@ -0,0 +1,38 @@
+package com.govagency.util;
+
+import java.util.List;
+
+/**
+ * One slice of a larger result, with the size of the whole result.
+ */
+public class Page<T> {
+
+    private final List<T> items;
+    private final int offset;
+    private final int total;
+
+    public Page(List<T> items, int offset, int total) {
+        this.items = items;
+        this.offset = offset;
+        this.total = total;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Position of the first item within the whole result.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+}
@@ -0,0 +1,283 @@
+package com.govagency.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Inverted index over the service type and description of service requests.
+ *
+ * <p>Text is split into words of letters and digits and lower-cased. For
+ * every word the index lists the requests containing it, and where in them,
+ * so a query can ask for words anywhere ({@code passport renewal}) or next
+ * to each other ({@code "lost passport"}). A request matches when it has
+ * every word and every phrase of the query; matches are ranked with BM25,
+ * counting a word in the service type {@link #SERVICE_TYPE_WEIGHT} times.
+ *
+ * <p>A request's text never changes after it is submitted, so requests are
+ * only added or removed. Removing one marks its slot, which searches skip;
+ * its postings stay until the index is next built. Not thread-safe.
+ */
+public class RequestSearchIndex {
+
+    private static final int SERVICE_TYPE_WEIGHT = 3;
+
+    // BM25 term frequency saturation and length normalization, the usual defaults
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private final List<String> ids = new ArrayList<>();
+    private final BitSet removed = new BitSet();
+    private int[] lengths = new int[16];
+    // Words of the service type; the description starts one position after them
+    private int[] typeLengths = new int[16];
+    private long totalLength;
+    private final Map<String, Postings> terms = new HashMap<>();
+
+    /**
+     * Requests containing one word, by ascending slot, with the word's positions in each.
+     */
+    private static final class Postings {
+        int[] slots = new int[2];
+        // Positions of slots[i] are positions[starts[i]] up to positions[starts[i + 1]]
+        int[] starts = new int[3];
+        int[] positions = new int[2];
+        int size;
+
+        void add(int slot, List<Integer> at) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                starts = Arrays.copyOf(starts, size * 2 + 1);
+            }
+            int end = starts[size];
+            if (end + at.size() > positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(positions.length * 2, end + at.size()));
+            }
+            for (int position : at) {
+                positions[end++] = position;
+            }
+            slots[size++] = slot;
+            starts[size] = end;
+        }
+
+        /**
+         * Index of the first entry at or after {@code from} whose slot is not below {@code slot}.
+         */
+        int seek(int from, int slot) {
+            int step = 1;
+            int low = from;
+            int high = from;
+            while (high < size && slots[high] < slot) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int found = Arrays.binarySearch(slots, low, Math.min(high + 1, size), slot);
+            return found >= 0 ? found : -found - 1;
+        }
+
+        boolean hasPosition(int entry, int position) {
+            return Arrays.binarySearch(positions, starts[entry], starts[entry + 1], position) >= 0;
+        }
+    }
+
+    private static final class Hit {
+        final int slot;
+        final double score;
+
+        Hit(int slot, double score) {
+            this.slot = slot;
+            this.score = score;
+        }
+
+        // Higher score first, then the newer request
+        boolean isBetterThan(Hit other) {
+            return score != other.score ? score > other.score : slot > other.slot;
+        }
+    }
+
+    /**
+     * Index a request. A request already in the index is left as it is.
+     */
+    public void add(String id, String serviceType, String description) {
+        if (slotById.containsKey(id)) return;
+
+        int slot = ids.size();
+        ids.add(id);
+        slotById.put(id, slot);
+
+        List<String> typeWords = tokenize(serviceType);
+        List<String> descriptionWords = tokenize(description);
+        Map<String, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < typeWords.size(); i++) {
+            positions.computeIfAbsent(typeWords.get(i), k -> new ArrayList<>()).add(i);
+        }
+        // The gap keeps a phrase from spanning the two fields
+        int offset = typeWords.size() + 1;
+        for (int i = 0; i < descriptionWords.size(); i++) {
+            positions.computeIfAbsent(descriptionWords.get(i), k -> new ArrayList<>()).add(offset + i);
+        }
+        for (Map.Entry<String, List<Integer>> word : positions.entrySet()) {
+            terms.computeIfAbsent(word.getKey(), k -> new Postings()).add(slot, word.getValue());
+        }
+
+        if (slot == lengths.length) {
+            lengths = Arrays.copyOf(lengths, slot * 2);
+            typeLengths = Arrays.copyOf(typeLengths, slot * 2);
+        }
+        lengths[slot] = typeWords.size() + descriptionWords.size();
+        typeLengths[slot] = typeWords.size();
+        totalLength += lengths[slot];
+    }
+
+    public void remove(String id) {
+        Integer slot = slotById.remove(id);
+        if (slot == null) return;
+
+        removed.set(slot);
+        totalLength -= lengths[slot];
+    }
+
+    public int size() {
+        return slotById.size();
+    }
+
+    /**
+     * Ids of up to {@code limit} requests matching {@code query}, best first.
+     * Quoted parts of the query are phrases; everything else is single words.
+     */
+    public List<String> search(String query, int limit) {
+        List<List<String>> phrases = new ArrayList<>();
+        Set<String> words = new HashSet<>();
+        parse(query, phrases, words);
+        if (words.isEmpty() || limit <= 0) return new ArrayList<>();
+
+        String[] wordList = words.toArray(new String[0]);
+        Postings[] lists = new Postings[wordList.length];
+        for (int i = 0; i < wordList.length; i++) {
+            lists[i] = terms.get(wordList[i]);
+            if (lists[i] == null) return new ArrayList<>();
+        }
+        // Walk the rarest word's requests and look for the others in each
+        Integer[] order = new Integer[lists.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Integer.compare(lists[a].size, lists[b].size));
+
+        double[] idf = new double[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            // Postings still count removed requests; close enough for ranking
+            idf[i] = Math.log(1 + Math.max(0, size() - lists[i].size + 0.5) / (lists[i].size + 0.5));
+        }
+        Map<String, Integer> wordIndex = new HashMap<>();
+        for (int i = 0; i < wordList.length; i++) wordIndex.put(wordList[i], i);
+
+        double averageLength = Math.max(1.0, (double) totalLength / Math.max(1, size()));
+        int[] cursors = new int[lists.length];
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit, (a, b) -> a.isBetterThan(b) ? 1 : b.isBetterThan(a) ? -1 : 0);
+        Postings rarest = lists[order[0]];
+
+        candidates:
+        for (int e = 0; e < rarest.size; e++) {
+            int slot = rarest.slots[e];
+            if (removed.get(slot)) continue;
+            cursors[order[0]] = e;
+            for (int k = 1; k < order.length; k++) {
+                int j = order[k];
+                cursors[j] = lists[j].seek(cursors[j], slot);
+                if (cursors[j] == lists[j].size) break candidates;
+                if (lists[j].slots[cursors[j]] != slot) continue candidates;
+            }
+            for (List<String> phrase : phrases) {
+                if (!containsPhrase(phrase, lists, cursors, wordIndex)) continue candidates;
+            }
+
+            double score = 0;
+            for (int i = 0; i < lists.length; i++) {
+                double frequency = weightedFrequency(lists[i], cursors[i], typeLengths[slot]);
+                score += idf[i] * frequency * (K1 + 1)
+                        / (frequency + K1 * (1 - B + B * lengths[slot] / averageLength));
+            }
+            Hit hit = new Hit(slot, score);
+            if (best.size() < limit) {
+                best.add(hit);
+            } else if (hit.isBetterThan(best.peek())) {
+                best.poll();
+                best.add(hit);
+            }
+        }
+
+        List<String> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(ids.get(best.poll().slot));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static double weightedFrequency(Postings postings, int entry, int typeLength) {
+        double frequency = 0;
+        for (int p = postings.starts[entry]; p < postings.starts[entry + 1]; p++) {
+            frequency += postings.positions[p] < typeLength ? SERVICE_TYPE_WEIGHT : 1;
+        }
+        return frequency;
+    }
+
+    private static boolean containsPhrase(List<String> phrase, Postings[] lists, int[] cursors,
+                                          Map<String, Integer> wordIndex) {
+        int firstWord = wordIndex.get(phrase.get(0));
+        Postings first = lists[firstWord];
+        starts:
+        for (int p = first.starts[cursors[firstWord]]; p < first.starts[cursors[firstWord] + 1]; p++) {
+            int start = first.positions[p];
+            for (int i = 1; i < phrase.size(); i++) {
+                int w = wordIndex.get(phrase.get(i));
+                if (!lists[w].hasPosition(cursors[w], start + i)) continue starts;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Split a query into quoted phrases of two or more words, and the set of all its words.
+     * A missing closing quote ends the phrase at the end of the query.
+     */
+    private static void parse(String query, List<List<String>> phrases, Set<String> words) {
+        if (query == null) return;
+        String[] parts = query.split("\"", -1);
+        for (int i = 0; i < parts.length; i++) {
+            List<String> partWords = tokenize(parts[i]);
+            words.addAll(partWords);
+            // Odd parts were between quotes
+            if (i % 2 == 1 && partWords.size() > 1) {
+                phrases.add(partWords);
+            }
+        }
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) return words;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,24 @@
+package com.govagency.util;
+
+import java.util.Comparator;
+
+/**
+ * Order of a paged listing. Every order is total, so pages neither repeat nor skip records.
+ */
+public enum SortKey {
+    /** By record id, see {@link #ID_ORDER}. */
+    ID,
+    /** By citizen id, see {@link #ID_ORDER}, then each citizen's records in insertion order. */
+    CITIZEN,
+    /** By status name, then oldest first. */
+    STATUS,
+    /** Oldest first, ties by id. */
+    DATE;
+
+    /**
+     * Shorter ids first, then character by character, so the numeric citizen
+     * ids sort as numbers (2 before 10) and generated ids by citizen and time.
+     */
+    public static final Comparator<String> ID_ORDER =
+            Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder());
+}
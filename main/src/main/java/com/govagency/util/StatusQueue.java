@@ -0,0 +1,34 @@
+package com.govagency.util;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The head of one status's work queue, with the number of records in every status.
+ */
+public class StatusQueue<T, S extends Enum<S>> {
+
+    private final List<T> items;
+    private final Map<S, Integer> counts;
+
+    public StatusQueue(List<T> items, Map<S, Integer> counts) {
+        this.items = items;
+        this.counts = counts;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public Map<S, Integer> getCounts() {
+        return counts;
+    }
+
+    public int getCount(S status) {
+        return counts.getOrDefault(status, 0);
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+}